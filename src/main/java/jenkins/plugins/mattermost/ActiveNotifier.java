@@ -9,6 +9,7 @@ import hudson.model.BuildListener;
 import hudson.model.Cause;
 import hudson.model.Result;
 import hudson.model.Run;
+import hudson.plugins.git.GitChangeSet;
 import hudson.scm.ChangeLogSet;
 import hudson.scm.ChangeLogSet.AffectedFile;
 import hudson.scm.ChangeLogSet.Entry;
@@ -21,12 +22,17 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.SEVERE;
 import static org.json.JSONObject.quote;
@@ -70,21 +76,75 @@ public class ActiveNotifier implements FineGrainedNotifier {
 //         }
 //      }
 
-      MessageBuilder message = new MessageBuilder(notifier, build)
-              .appendProjectAsAuthor()
-              .appendCommitsAsText()
-              .appendChanges();
-      notifyStart(build, message);
+      NotificationTiming timing = startTiming();
+      try {
+         MattermostService mattermost = getMattermost(build);
+         long start = System.nanoTime();
+         NotificationTiming.begin();
+         List<JSONObject> parts;
+         try {
+            parts = new MessageBuilder(notifier, build, mattermost)
+                    .appendProjectAsAuthor()
+                    .appendCommitsAsText()
+                    .appendChanges()
+                    .getMattermostParts();
+         } finally {
+            NotificationTiming.end("render");
+         }
+         NotificationMetrics.get().recordRender(System.nanoTime() - start);
+         NotificationTrace.mark("rendered", parts.size() > 1 ? parts.size() + " parts" : null);
+         notifyStart(build, parts, mattermost);
+      } finally {
+         finishTiming(timing, build, "start");
+      }
+   }
+
+   private NotificationTiming startTiming() {
+      return GlobalConfigSnapshot.get().isTimingTrace() ? NotificationTiming.start() : null;
    }
 
-   private void notifyStart(AbstractBuild build, MessageBuilder message) {
+   private void finishTiming(NotificationTiming timing, AbstractBuild build, String event) {
+      if (timing != null) {
+         timing.finish(build.getProject().getFullName(), event, listener != null ? listener.getLogger() : null);
+      }
+   }
+
+   private void notifyStart(AbstractBuild build, List<JSONObject> parts, MattermostService mattermost) {
       AbstractProject<?, ?> project = (build != null) ? build.getProject() : null;
       AbstractBuild<?, ?> previousBuild = (project != null && project.getLastBuild() != null) ? project.getLastBuild().getPreviousCompletedBuild() : null;
-      if (previousBuild == null) {
-         getMattermost(build).publish(message.getMattermostJSON(), "good");
+      String color = (previousBuild == null) ? "good" : getBuildColor(previousBuild);
+      String eventKey = IdempotencyKey.of(build, IdempotencyKey.STARTED);
+      if (mattermost instanceof UpdatableMattermostService) {
+         // remember the start post, so that the completion notification can replace it instead of posting again
+         Map<String, String> postIds = ((UpdatableMattermostService) mattermost)
+                 .publishForUpdate(parts.get(0), color, eventKey);
+         if (build != null && !postIds.isEmpty()) {
+            build.addAction(new MattermostPostAction(postIds));
+         }
       } else {
-         getMattermost(build).publish(message.getMattermostJSON(), getBuildColor(previousBuild));
+         publish(mattermost, parts.get(0), color, eventKey);
+      }
+      publishContinuations(mattermost, parts, color, eventKey);
+   }
+
+   /**
+    * Posts the parts after the first one of a message that was too large for a single post.
+    */
+   private static void publishContinuations(MattermostService mattermost, List<JSONObject> parts, String color,
+                                            String eventKey) {
+      for (int i = 1; i < parts.size(); i++) {
+         publish(mattermost, parts.get(i), color, IdempotencyKey.forPart(eventKey, i + 1));
+      }
+   }
+
+   /**
+    * Publishes once per event key if the service suppresses duplicates, services of other plugins just publish.
+    */
+   private static boolean publish(MattermostService mattermost, JSONObject json, String color, String eventKey) {
+      if (mattermost instanceof KeyedMattermostService) {
+         return ((KeyedMattermostService) mattermost).publish(json, color, eventKey);
       }
+      return mattermost.publish(json, color);
    }
 
    public void finalized(AbstractBuild r) {
@@ -126,39 +186,71 @@ public class ActiveNotifier implements FineGrainedNotifier {
       }
 
       if (shouldPublish) {
-         getMattermost(build).publish(getBuildStatusJSON(build), getBuildColor(build));
+         NotificationTiming timing = startTiming();
+         try {
+            MattermostService mattermost = getMattermost(build);
+            String eventKey = IdempotencyKey.of(build, IdempotencyKey.COMPLETED);
+            List<JSONObject> parts = getBuildStatusParts(build, mattermost);
+            MattermostPostAction startPost = build.getAction(MattermostPostAction.class);
+            if (startPost != null && mattermost instanceof UpdatableMattermostService) {
+               ((UpdatableMattermostService) mattermost).publishOrUpdate(startPost.getPostIds(),
+                       parts.get(0), getBuildColor(build), eventKey);
+            } else {
+               publish(mattermost, parts.get(0), getBuildColor(build), eventKey);
+            }
+            publishContinuations(mattermost, parts, getBuildColor(build), eventKey);
+         } finally {
+            finishTiming(timing, build, "completion");
+         }
       }
    }
 
-   private JSONObject getBuildStatusJSON(AbstractBuild build) {
-      MessageBuilder message = new MessageBuilder(notifier, build)
-              .appendProjectAsAuthor()
-              .appendCommitsAsText()
-              .appendStatus()
-              .appendDuration()
-              .appendChanges()
-              .appendTestSummary();
-      return message.getMattermostJSON();
+   private List<JSONObject> getBuildStatusParts(AbstractBuild build, MattermostService mattermost) {
+      long start = System.nanoTime();
+      NotificationTiming.begin();
+      List<JSONObject> parts;
+      try {
+         MessageBuilder message = new MessageBuilder(notifier, build, mattermost)
+                 .appendProjectAsAuthor()
+                 .appendCommitsAsText()
+                 .appendStatus()
+                 .appendDuration()
+                 .appendChanges()
+                 .appendTestSummary();
+         parts = message.getMattermostParts();
+      } finally {
+         NotificationTiming.end("render");
+      }
+      NotificationMetrics.get().recordRender(System.nanoTime() - start);
+      NotificationTrace.mark("rendered", parts.size() > 1 ? parts.size() + " parts" : null);
+      return parts;
    }
 
    private String getChanges(AbstractBuild build, boolean includeCustomMessage) {
       if (!build.hasChangeSetComputed()) {
-         logger.info("No change set computed...");
+         logger.fine("No change set computed...");
          return null;
       }
 
-      ChangeLogSet changeSet = build.getChangeSet();
+      NotificationTiming.begin();
       List<Entry> entries = new LinkedList<>();
       Set<AffectedFile> files = new HashSet<>();
-      for (Object o : changeSet.getItems()) {
-         Entry entry = (Entry) o;
-         logger.info("Entry " + o);
-         entries.add(entry);
-         files.addAll(entry.getAffectedFiles());
+      try {
+         ChangeLogSet changeSet = build.getChangeSet();
+         for (Object o : changeSet.getItems()) {
+            Entry entry = (Entry) o;
+            entries.add(entry);
+            files.addAll(entry.getAffectedFiles());
+         }
+      } finally {
+         NotificationTiming.end("changes");
       }
 
+      if (logger.isLoggable(FINE)) {
+         logger.fine(entries.size() + " change entries in " + build.getFullDisplayName());
+      }
       if (entries.isEmpty()) {
-         logger.info("Empty change...");
+         logger.fine("Empty change...");
          return null;
       }
 
@@ -200,26 +292,40 @@ public class ActiveNotifier implements FineGrainedNotifier {
       String customMessage = notifier.getCustomMessage();
 
       EnvVars envVars = new EnvVars();
+      NotificationTiming.begin();
       try {
          envVars = build.getEnvironment(new LogTaskListener(logger, INFO));
       } catch (IOException | InterruptedException e) {
          logger.log(SEVERE, e.getMessage(), e);
+      } finally {
+         NotificationTiming.end("environment");
       }
 
       return "\n" + envVars.expand(customMessage);
    }
 
-   private String getCommitList(AbstractBuild build) {
-      ChangeLogSet changeSet = build.getChangeSet();
+   /**
+    * @param mattermost the service the list will be posted with, used to look up mentions
+    * @param mentioned  receives the Mattermost user names of the authors to mention
+    */
+   private String getCommitList(AbstractBuild build, MattermostService mattermost, Set<String> mentioned) {
+      NotificationTiming.begin();
       List<Entry> entries = new LinkedList<>();
-      for (Object o : changeSet.getItems()) {
-         Entry entry = (Entry) o;
-         logger.info("Entry " + o);
-         entries.add(entry);
+      try {
+         ChangeLogSet changeSet = build.getChangeSet();
+         for (Object o : changeSet.getItems()) {
+            Entry entry = (Entry) o;
+            entries.add(entry);
+         }
+      } finally {
+         NotificationTiming.end("changes");
       }
 
+      if (logger.isLoggable(FINE)) {
+         logger.fine(entries.size() + " change entries in " + build.getFullDisplayName());
+      }
       if (entries.isEmpty()) {
-         logger.info("Empty change...");
+         logger.fine("Empty change...");
          Cause.UpstreamCause c = (Cause.UpstreamCause) build.getCause(Cause.UpstreamCause.class);
          if (c == null) {
             return "No Changes.";
@@ -233,13 +339,15 @@ public class ActiveNotifier implements FineGrainedNotifier {
          }
 
          AbstractBuild upBuild = project.getBuildByNumber(buildNumber);
-         return getCommitList(upBuild);
+         return getCommitList(upBuild, mattermost, mentioned);
       }
 
+      CommitInfoChoice commitInfoChoice = notifier.getCommitInfoChoice();
+      Map<MentionResolver.Author, String> mentions = commitInfoChoice.showAuthor()
+              ? resolveMentions(mattermost, entries) : Collections.<MentionResolver.Author, String>emptyMap();
       Set<String> commits = new HashSet<>();
       for (Entry entry : entries) {
          StringBuilder commit = new StringBuilder();
-         CommitInfoChoice commitInfoChoice = notifier.getCommitInfoChoice();
          if (commitInfoChoice.showTitle()) {
             // String link = entry.getMsgAnnotated().replaceFirst(".+<a href='(.+?)'>.+", "($1)");
             // commit.append('[').append(entry.getMsg()).append(']').append(link);
@@ -247,6 +355,10 @@ public class ActiveNotifier implements FineGrainedNotifier {
          }
          if (commitInfoChoice.showAuthor()) {
             commit.append(" [").append(entry.getAuthor().getDisplayName()).append("]");
+            String mention = mentions.isEmpty() ? null : mentions.get(author(entry));
+            if (mention != null) {
+               mentioned.add(mention);
+            }
          }
          commits.add(commit.toString());
       }
@@ -254,6 +366,33 @@ public class ActiveNotifier implements FineGrainedNotifier {
       return "- " + StringUtils.join(commits, "\n- ");
    }
 
+   /**
+    * Looks up the Mattermost users of all authors of the change set at once, if enabled and a bot token is set.
+    */
+   private Map<MentionResolver.Author, String> resolveMentions(MattermostService mattermost, List<Entry> entries) {
+      if (!GlobalConfigSnapshot.get().isMentionCommitAuthors()) {
+         return Collections.emptyMap();
+      }
+      if (!(mattermost instanceof RestMattermostService)) {
+         return Collections.emptyMap();
+      }
+      NotificationTiming.begin();
+      try {
+         List<MentionResolver.Author> authors = new ArrayList<>(entries.size());
+         for (Entry entry : entries) {
+            authors.add(author(entry));
+         }
+         return MentionResolver.get().resolve((RestMattermostService) mattermost, authors);
+      } finally {
+         NotificationTiming.end("mentions");
+      }
+   }
+
+   private static MentionResolver.Author author(Entry entry) {
+      String email = entry instanceof GitChangeSet ? ((GitChangeSet) entry).getAuthorEmail() : null;
+      return new MentionResolver.Author(entry.getAuthor().getId(), email);
+   }
+
    private static String getBuildColor(AbstractBuild r) {
       Result result = r.getResult();
       if (result == Result.SUCCESS) {
@@ -279,13 +418,22 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
       private final MattermostNotifier notifier;
       private final AbstractBuild build;
+      private final MattermostService mattermost;
       private final JSONObject attachment;
       private final JSONArray fields;
       private final JSONObject json;
 
       MessageBuilder(MattermostNotifier notifier, AbstractBuild build) {
+         this(notifier, build, null);
+      }
+
+      /**
+       * @param mattermost the service the message will be posted with, {@code null} to render without mentions
+       */
+      MessageBuilder(MattermostNotifier notifier, AbstractBuild build, MattermostService mattermost) {
          this.notifier = notifier;
          this.build = build;
+         this.mattermost = mattermost;
 
          json = new JSONObject();
 
@@ -314,6 +462,14 @@ public class ActiveNotifier implements FineGrainedNotifier {
          return json;
       }
 
+      /**
+       * @return the message, split into several posts if it exceeds the size Mattermost accepts
+       * @see PayloadSplitter
+       */
+      List<JSONObject> getMattermostParts() {
+         return PayloadSplitter.split(json);
+      }
+
       MessageBuilder appendProjectAsAuthor() {
          String authorName = build.getProject().getFullDisplayName() + " " + build.getDisplayName();
          attachment.put("author_name", authorName);
@@ -354,7 +510,12 @@ public class ActiveNotifier implements FineGrainedNotifier {
          if (!notifier.getCommitInfoChoice().showAnything())
             return this;
 
-         attachment.put("text", getCommitList(build));
+         Set<String> mentioned = new LinkedHashSet<>();
+         attachment.put("text", getCommitList(build, mattermost, mentioned));
+         if (!mentioned.isEmpty()) {
+            // Mattermost only notifies users mentioned in the message itself, not in attachments
+            json.put("text", "cc @" + StringUtils.join(mentioned, " @"));
+         }
 
          return this;
       }
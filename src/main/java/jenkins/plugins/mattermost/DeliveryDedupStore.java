@@ -0,0 +1,123 @@
+package jenkins.plugins.mattermost;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which notifications were recently delivered so that retried or replayed events do not post twice.
+ * <p>
+ * Keys are kept as 64-bit fingerprints in a ring buffer of fixed capacity: once it is full the oldest entry is
+ * overwritten, and entries older than the time-to-live are treated as absent.
+ */
+public class DeliveryDedupStore {
+
+   private static final int DEFAULT_CAPACITY = Integer.getInteger(DeliveryDedupStore.class.getName() + ".capacity", 4096);
+   private static final long DEFAULT_TTL_MINUTES = Long.getLong(DeliveryDedupStore.class.getName() + ".ttlMinutes", 60L);
+
+   private static final DeliveryDedupStore DEFAULT = new DeliveryDedupStore(DEFAULT_CAPACITY,
+           TimeUnit.MINUTES.toMillis(DEFAULT_TTL_MINUTES));
+
+   private final long ttl;
+   private final long[] fingerprints;
+   private final long[] timestamps;
+   private final boolean[] occupied;
+   private final boolean[] released;
+   private final Map<Long, Integer> slots;
+   private int next;
+
+   DeliveryDedupStore(int capacity, long ttl) {
+      if (capacity <= 0) {
+         throw new IllegalArgumentException("capacity must be positive: " + capacity);
+      }
+      this.ttl = ttl;
+      this.fingerprints = new long[capacity];
+      this.timestamps = new long[capacity];
+      this.occupied = new boolean[capacity];
+      this.released = new boolean[capacity];
+      this.slots = new HashMap<>(capacity * 2);
+   }
+
+   public static DeliveryDedupStore getDefault() {
+      return DEFAULT;
+   }
+
+   /**
+    * Outcome of {@link #claim(String)}.
+    */
+   public enum Claim {
+      /** First delivery of the key. */
+      NEW,
+      /** The key was released after a failed delivery and is being delivered again. */
+      RETRY,
+      /** The key was already claimed within the time-to-live, the post must be skipped. */
+      DUPLICATE
+   }
+
+   /**
+    * Claims the key for delivery.
+    *
+    * @return {@code false} if the key was already claimed within the time-to-live, i.e. the post must be skipped
+    */
+   public boolean tryAcquire(String key) {
+      return claim(key) != Claim.DUPLICATE;
+   }
+
+   /**
+    * Claims the key for delivery, telling apart first deliveries from retries of failed ones.
+    */
+   public Claim claim(String key) {
+      return claim(key, System.currentTimeMillis());
+   }
+
+   boolean tryAcquire(String key, long now) {
+      return claim(key, now) != Claim.DUPLICATE;
+   }
+
+   synchronized Claim claim(String key, long now) {
+      long fingerprint = IdempotencyKey.fingerprint(key);
+      Integer slot = slots.get(fingerprint);
+      if (slot != null) {
+         if (now - timestamps[slot] < ttl) {
+            if (!released[slot]) {
+               return Claim.DUPLICATE;
+            }
+            timestamps[slot] = now;
+            released[slot] = false;
+            return Claim.RETRY;
+         }
+         clear(slot);
+      }
+      int target = next;
+      if (occupied[target]) {
+         clear(target);
+      }
+      fingerprints[target] = fingerprint;
+      timestamps[target] = now;
+      occupied[target] = true;
+      released[target] = false;
+      slots.put(fingerprint, target);
+      next = (target + 1) % fingerprints.length;
+      return Claim.NEW;
+   }
+
+   /**
+    * Gives the key back after a delivery that definitely failed, so that a later retry is allowed through.
+    * The key stays remembered so that the next claim is reported as a {@link Claim#RETRY}.
+    */
+   public synchronized void release(String key) {
+      Integer slot = slots.get(IdempotencyKey.fingerprint(key));
+      if (slot != null) {
+         released[slot] = true;
+      }
+   }
+
+   synchronized int size() {
+      return slots.size();
+   }
+
+   private void clear(int slot) {
+      slots.remove(fingerprints[slot]);
+      occupied[slot] = false;
+   }
+}
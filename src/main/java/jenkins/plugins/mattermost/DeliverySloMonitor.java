@@ -0,0 +1,25 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Extension;
+import hudson.model.AdministrativeMonitor;
+
+/**
+ * Tells administrators that Mattermost notifications are delivered later than the configured SLO.
+ */
+@Extension
+public class DeliverySloMonitor extends AdministrativeMonitor {
+
+   @Override
+   public boolean isActivated() {
+      return DeliveryWatchdog.get().isBreached();
+   }
+
+   @Override
+   public String getDisplayName() {
+      return "Mattermost delivery SLO";
+   }
+
+   public DeliveryWatchdog getWatchdog() {
+      return DeliveryWatchdog.get();
+   }
+}
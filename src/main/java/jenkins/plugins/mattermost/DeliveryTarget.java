@@ -0,0 +1,142 @@
+package jenkins.plugins.mattermost;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One channel a notification is posted to, parsed from an entry of the room setting: {@code channel} or
+ * {@code user@channel}, entries separated by commas, semicolons or spaces.
+ * <p>
+ * Targets are immutable and cached by configuration, so posting does no string splitting or regex work. The cache
+ * is filled when a job configuration is saved and otherwise on first use, e.g. for rooms with build variables.
+ * If the endpoint is a pool of webhooks, each target is assigned its webhook here once.
+ */
+public final class DeliveryTarget {
+
+   static final String DEFAULT_USER = "jenkins";
+
+   private static final int MAX_CACHED = Integer.getInteger(DeliveryTarget.class.getName() + ".maxCached", 1000);
+   private static final ConcurrentMap<String, List<DeliveryTarget>> CACHE = new ConcurrentHashMap<>();
+
+   private final String endpoint;
+   private final String url;
+   private final String endpointLabel;
+   private final String user;
+   private final String channel;
+   private final String icon;
+   private final String raw;
+   private final String label;
+
+   private DeliveryTarget(String endpoint, ShardPool pool, String endpointLabel, String raw, String icon) {
+      this.endpoint = endpoint;
+      this.endpointLabel = endpointLabel;
+      this.raw = raw;
+      this.icon = icon;
+      // as posting always did: "user@" is a channel, "@channel" has an empty user, "a@b@c" posts to b as a
+      String[] userAndChannel = raw.split("@");
+      if (userAndChannel.length > 1) {
+         this.user = userAndChannel[0];
+         this.channel = userAndChannel[1];
+      } else {
+         this.user = DEFAULT_USER;
+         this.channel = userAndChannel.length == 1 ? userAndChannel[0] : "";
+      }
+      this.url = pool.select(channel);
+      this.label = (channel.isEmpty() ? "(default)" : channel) + "@" + endpointLabel;
+   }
+
+   /**
+    * @return the targets of the room setting, at least one; an empty setting posts to the webhook's default channel
+    */
+   public static List<DeliveryTarget> parse(String endpoint, String rooms, String icon) {
+      String key = endpoint + '\n' + rooms + '\n' + icon;
+      List<DeliveryTarget> targets = CACHE.get(key);
+      if (targets == null) {
+         targets = Collections.unmodifiableList(split(endpoint, StringUtils.defaultString(rooms), icon));
+         if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+         }
+         CACHE.put(key, targets);
+      }
+      return targets;
+   }
+
+   private static List<DeliveryTarget> split(String endpoint, String rooms, String icon) {
+      ShardPool pool = ShardPool.parse(endpoint);
+      String endpointLabel = NotificationMetrics.endpointLabel(pool.getPrimary());
+      List<DeliveryTarget> targets = new ArrayList<>();
+      int start = 0;
+      for (int i = 0; i <= rooms.length(); i++) {
+         if (i == rooms.length() || isSeparator(rooms.charAt(i))) {
+            if (i > start) {
+               targets.add(new DeliveryTarget(endpoint, pool, endpointLabel, rooms.substring(start, i), icon));
+            }
+            start = i + 1;
+         }
+      }
+      if (targets.isEmpty()) {
+         targets.add(new DeliveryTarget(endpoint, pool, endpointLabel, "", icon));
+      }
+      return targets;
+   }
+
+   private static boolean isSeparator(char c) {
+      return c == ',' || c == ';' || c == ' ';
+   }
+
+   /**
+    * @return the endpoint as configured, possibly a {@link ShardPool} of webhook urls
+    */
+   public String getEndpoint() {
+      return endpoint;
+   }
+
+   /**
+    * @return the webhook url this target posts to, picked from the endpoint's pool by channel
+    */
+   public String getUrl() {
+      return url;
+   }
+
+   /**
+    * @return scheme, host and port of the endpoint's first url, safe to log
+    */
+   public String getEndpointLabel() {
+      return endpointLabel;
+   }
+
+   public String getUser() {
+      return user;
+   }
+
+   /**
+    * @return the channel, empty for the webhook's default channel
+    */
+   public String getChannel() {
+      return channel;
+   }
+
+   public String getIcon() {
+      return icon;
+   }
+
+   /**
+    * @return the entry as configured, e.g. {@code user@channel}
+    */
+   public String getRaw() {
+      return raw;
+   }
+
+   /**
+    * @return channel and endpoint host, for logging
+    */
+   @Override
+   public String toString() {
+      return label;
+   }
+}
@@ -0,0 +1,189 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches how late notifications are delivered: the age of the oldest notification still in progress and the p99
+ * delivery lag over the last {@code jenkins.plugins.mattermost.DeliveryWatchdog.windowMinutes}, both against the
+ * configured delivery SLO.
+ * <p>
+ * A notification is in progress from the creation of its {@link NotificationTrace} until the trace completes. Only
+ * notifications that attempted a post count towards the lag, and failed ones are counted separately. On a
+ * breach {@link DeliverySloMonitor} is shown to administrators and, if a fallback endpoint is configured, a single
+ * summary is posted there; the next alert is only sent after the SLO was met again.
+ */
+public class DeliveryWatchdog {
+
+   private static final Logger logger = Logger.getLogger(DeliveryWatchdog.class.getName());
+
+   private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(
+           Long.getLong(DeliveryWatchdog.class.getName() + ".windowMinutes", 5L));
+   /** In-progress entries older than this are assumed to be leaked and no longer count. */
+   private static final long ABANDONED_NANOS = TimeUnit.HOURS.toNanos(24);
+
+   private static final DeliveryWatchdog INSTANCE = new DeliveryWatchdog(WINDOW_NANOS);
+
+   private final long windowNanos;
+   private final AtomicLong sequence = new AtomicLong();
+   private final ConcurrentSkipListMap<Long, Long> inProgress = new ConcurrentSkipListMap<>();
+   private volatile LatencyHistogram currentWindow = new LatencyHistogram();
+   private volatile LatencyHistogram previousWindow = new LatencyHistogram();
+   private volatile AtomicLong currentFailures = new AtomicLong();
+   private volatile AtomicLong previousFailures = new AtomicLong();
+   private long windowStart = System.nanoTime();
+   private volatile boolean breached;
+   private volatile String summary = "";
+   private boolean alerted;
+
+   DeliveryWatchdog(long windowNanos) {
+      this.windowNanos = windowNanos;
+   }
+
+   public static DeliveryWatchdog get() {
+      return INSTANCE;
+   }
+
+   /**
+    * @return a handle to pass to {@link #delivered(long, long)}, {@link #failed(long)} or {@link #discarded(long)}
+    */
+   long opened(long startNanos) {
+      long id = sequence.incrementAndGet();
+      inProgress.put(id, startNanos);
+      return id;
+   }
+
+   void delivered(long id, long nanos) {
+      if (inProgress.remove(id) != null) {
+         currentWindow.record(nanos);
+      }
+   }
+
+   /**
+    * A notification whose post failed, which says nothing about how long deliveries take.
+    */
+   void failed(long id) {
+      if (inProgress.remove(id) != null) {
+         currentFailures.incrementAndGet();
+      }
+   }
+
+   /**
+    * A notification that did not post anything, e.g. because the build result is not notified.
+    */
+   void discarded(long id) {
+      inProgress.remove(id);
+   }
+
+   public long getOldestInProgressNanos(long now) {
+      Map.Entry<Long, Long> oldest = inProgress.firstEntry();
+      return oldest != null ? Math.max(0, now - oldest.getValue()) : 0;
+   }
+
+   public int getInProgress() {
+      return inProgress.size();
+   }
+
+   /**
+    * @return the p99 delivery lag over the current and the previous window
+    */
+   public long getLagP99Nanos() {
+      LatencyHistogram merged = new LatencyHistogram();
+      merged.add(previousWindow);
+      merged.add(currentWindow);
+      return merged.getPercentile(0.99);
+   }
+
+   /**
+    * @return the number of failed notifications over the current and the previous window
+    */
+   public long getFailures() {
+      return previousFailures.get() + currentFailures.get();
+   }
+
+   public boolean isBreached() {
+      return breached;
+   }
+
+   public String getSummary() {
+      return summary;
+   }
+
+   /**
+    * Compares the current lag with the SLO.
+    *
+    * @return {@code true} if an alert should be sent, i.e. the SLO was just breached
+    */
+   synchronized boolean check(long now, long sloNanos) {
+      if (now - windowStart >= windowNanos) {
+         previousWindow = currentWindow;
+         currentWindow = new LatencyHistogram();
+         previousFailures = currentFailures;
+         currentFailures = new AtomicLong();
+         windowStart = now;
+      }
+      for (Iterator<Long> starts = inProgress.values().iterator(); starts.hasNext(); ) {
+         if (now - starts.next() > ABANDONED_NANOS) {
+            starts.remove();
+         }
+      }
+      long oldest = getOldestInProgressNanos(now);
+      long p99 = getLagP99Nanos();
+      breached = oldest > sloNanos || p99 > sloNanos;
+      summary = String.format(Locale.ROOT, "oldest undelivered notification is %d s old, p99 delivery lag is %.1f s,"
+              + " SLO is %d s (%d in progress, %d failed)", TimeUnit.NANOSECONDS.toSeconds(oldest), p99 / 1e9,
+              TimeUnit.NANOSECONDS.toSeconds(sloNanos), inProgress.size(), getFailures());
+      if (!breached) {
+         alerted = false;
+         return false;
+      }
+      boolean alert = !alerted;
+      alerted = true;
+      return alert;
+   }
+
+   /**
+    * Checks the SLO every 30 seconds and sends the fallback alert.
+    */
+   @Extension
+   public static class Checker extends PeriodicWork {
+
+      @Override
+      public long getRecurrencePeriod() {
+         return TimeUnit.SECONDS.toMillis(30);
+      }
+
+      @Override
+      protected void doRun() {
+         Jenkins jenkins = Jenkins.getInstance();
+         if (jenkins == null) {
+            return;
+         }
+         GlobalConfigSnapshot config = GlobalConfigSnapshot.get();
+         long slo = TimeUnit.SECONDS.toNanos(config.getDeliverySloSeconds());
+         DeliveryWatchdog watchdog = get();
+         if (!watchdog.check(System.nanoTime(), slo)) {
+            return;
+         }
+         logger.log(Level.WARNING, "Mattermost delivery SLO breached: " + watchdog.getSummary());
+         String fallbackEndpoint = config.getFallbackEndpoint();
+         if (!StringUtils.isEmpty(fallbackEndpoint)) {
+            // posted right away rather than through the dispatcher, which may be the reason for the lag
+            config.getTransport().newService(fallbackEndpoint, "", config.getIcon())
+                    .publish(":warning: Jenkins Mattermost notifications are late: " + watchdog.getSummary()
+                            + ". See " + StringUtils.defaultString(jenkins.getRootUrl()) + "mattermost", "danger");
+         }
+      }
+   }
+}
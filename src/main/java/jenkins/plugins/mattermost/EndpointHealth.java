@@ -0,0 +1,148 @@
+package jenkins.plugins.mattermost;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cached reachability of the Mattermost servers notifications are sent to.
+ * <p>
+ * Servers are checked with the unauthenticated {@code /api/v4/system/ping} call instead of a test post, by
+ * {@link EndpointHealthProbe} in the background and on demand from the configuration page. Real posts update the
+ * status as well, so callers can look it up without a network round trip.
+ */
+public class EndpointHealth {
+
+   private static final int MAX_ENDPOINTS = Integer.getInteger(EndpointHealth.class.getName() + ".maxEndpoints", 100);
+
+   private static final EndpointHealth INSTANCE = new EndpointHealth();
+
+   public enum Status {
+      UNKNOWN, UP, DOWN
+   }
+
+   private final ConcurrentMap<String, EndpointStatus> statuses = new ConcurrentHashMap<>();
+
+   EndpointHealth() {
+   }
+
+   public static EndpointHealth get() {
+      return INSTANCE;
+   }
+
+   /**
+    * Pings the server of the given endpoint and caches the outcome.
+    */
+   public EndpointStatus check(String endpoint) {
+      long start = System.nanoTime();
+      EndpointStatus status;
+      try {
+         int responseCode = newService(endpoint).ping();
+         long nanos = System.nanoTime() - start;
+         status = responseCode == 200
+                 ? new EndpointStatus(Status.UP, nanos, "ping answered in " + LatencyHistogram.toMillis(nanos) + " ms")
+                 : new EndpointStatus(Status.DOWN, nanos, "ping failed with HTTP " + responseCode);
+      } catch (IOException | RuntimeException e) {
+         status = new EndpointStatus(Status.DOWN, System.nanoTime() - start, "ping failed: " + e.getMessage());
+      }
+      update(endpoint, status);
+      return status;
+   }
+
+   StandardMattermostService newService(String endpoint) {
+      return new StandardMattermostService(endpoint, "", "");
+   }
+
+   /**
+    * @return the last known status, never {@code null}; does not touch the network
+    */
+   public EndpointStatus getStatus(String endpoint) {
+      EndpointStatus status = endpoint != null ? statuses.get(endpoint) : null;
+      return status != null ? status : EndpointStatus.UNKNOWN;
+   }
+
+   /**
+    * @return {@code false} only if the last check or post found the server unreachable
+    */
+   public boolean isReachable(String endpoint) {
+      return getStatus(endpoint).getStatus() != Status.DOWN;
+   }
+
+   /**
+    * Adds the endpoint to the ones checked in the background, without changing its status.
+    */
+   public void watch(String endpoint) {
+      if (endpoint != null && !statuses.containsKey(endpoint) && statuses.size() < MAX_ENDPOINTS) {
+         statuses.putIfAbsent(endpoint, EndpointStatus.UNKNOWN);
+      }
+   }
+
+   void recordReachable(String endpoint, long nanos) {
+      // smooth the latency so that one slow post does not reorder failover endpoints
+      EndpointStatus previous = getStatus(endpoint);
+      long latency = previous.getStatus() == Status.UP && previous.getLatencyNanos() > 0
+              ? (previous.getLatencyNanos() * 7 + nanos) / 8 : nanos;
+      update(endpoint, new EndpointStatus(Status.UP, latency, "last post answered in " + LatencyHistogram.toMillis(nanos) + " ms"));
+   }
+
+   void recordUnreachable(String endpoint, String message) {
+      update(endpoint, new EndpointStatus(Status.DOWN, 0, "last post failed: " + message));
+   }
+
+   private void update(String endpoint, EndpointStatus status) {
+      if (endpoint != null && (statuses.containsKey(endpoint) || statuses.size() < MAX_ENDPOINTS)) {
+         statuses.put(endpoint, status);
+      }
+   }
+
+   public List<String> getEndpoints() {
+      return new ArrayList<>(statuses.keySet());
+   }
+
+   /**
+    * Outcome of the last check of one endpoint.
+    */
+   public static class EndpointStatus {
+
+      static final EndpointStatus UNKNOWN = new EndpointStatus(Status.UNKNOWN, 0, "not checked yet", 0);
+
+      private final Status status;
+      private final long latencyNanos;
+      private final String message;
+      private final long checkedAt;
+
+      EndpointStatus(Status status, long latencyNanos, String message) {
+         this(status, latencyNanos, message, System.currentTimeMillis());
+      }
+
+      private EndpointStatus(Status status, long latencyNanos, String message, long checkedAt) {
+         this.status = status;
+         this.latencyNanos = latencyNanos;
+         this.message = message;
+         this.checkedAt = checkedAt;
+      }
+
+      public Status getStatus() {
+         return status;
+      }
+
+      public long getLatencyNanos() {
+         return latencyNanos;
+      }
+
+      public String getMessage() {
+         return message;
+      }
+
+      public long getCheckedAt() {
+         return checkedAt;
+      }
+
+      public long getAgeSeconds() {
+         return checkedAt == 0 ? -1 : TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - checkedAt);
+      }
+   }
+}
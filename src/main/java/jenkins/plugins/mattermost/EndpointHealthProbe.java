@@ -0,0 +1,61 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pings the globally configured endpoints and every endpoint posted to recently, so that {@link EndpointHealth}
+ * stays current without sending messages.
+ * <p>
+ * Unreachable endpoints are checked more often than the others, so that failover endpoints are taken back into
+ * use soon after they recover.
+ */
+@Extension
+public class EndpointHealthProbe extends AsyncPeriodicWork {
+
+   private static final long INTERVAL_SECONDS = Long.getLong(EndpointHealthProbe.class.getName() + ".intervalSeconds", 300L);
+   private static final long RECOVERY_INTERVAL_SECONDS = Long.getLong(EndpointHealthProbe.class.getName() + ".recoveryIntervalSeconds", 30L);
+
+   private long lastFullCheck;
+
+   public EndpointHealthProbe() {
+      super("Mattermost endpoint health probe");
+   }
+
+   @Override
+   public long getRecurrencePeriod() {
+      return TimeUnit.SECONDS.toMillis(Math.min(INTERVAL_SECONDS, RECOVERY_INTERVAL_SECONDS));
+   }
+
+   @Override
+   protected void execute(TaskListener listener) {
+      EndpointHealth health = EndpointHealth.get();
+      Jenkins jenkins = Jenkins.getInstance();
+      MattermostNotifier.DescriptorImpl descriptor = jenkins != null
+              ? jenkins.getDescriptorByType(MattermostNotifier.DescriptorImpl.class) : null;
+      // endpoints with build variables can only be resolved by a build
+      if (descriptor != null && !StringUtils.isEmpty(descriptor.getEndpoint()) && !descriptor.getEndpoint().contains("$")) {
+         for (String endpoint : EndpointList.parse(descriptor.getEndpoint()).getEndpoints()) {
+            health.watch(endpoint);
+         }
+      }
+      long now = System.currentTimeMillis();
+      boolean full = now - lastFullCheck >= TimeUnit.SECONDS.toMillis(INTERVAL_SECONDS) - 1000;
+      if (full) {
+         lastFullCheck = now;
+      }
+      for (String endpoint : health.getEndpoints()) {
+         if (!full && health.isReachable(endpoint)) {
+            continue;
+         }
+         EndpointHealth.EndpointStatus status = health.check(endpoint);
+         listener.getLogger().println(NotificationMetrics.endpointLabel(endpoint) + ": " + status.getStatus()
+                 + " (" + status.getMessage() + ")");
+      }
+   }
+}
@@ -0,0 +1,133 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The endpoints of one endpoint setting, e.g. the same webhook behind several ingress hostnames, given in order of
+ * preference and separated by commas or whitespace.
+ * <p>
+ * {@link #order()} ranks them by the health and latency tracked in {@link EndpointHealth}: endpoints that answered
+ * come first, fastest first, then endpoints not checked yet, then unreachable ones, each group in configured order.
+ * Unreachable endpoints stay in the list so that a notification is still attempted when every endpoint is down.
+ */
+public final class EndpointList {
+
+   private static final int MAX_CACHED = Integer.getInteger(EndpointList.class.getName() + ".maxCached", 1000);
+   private static final ConcurrentMap<String, EndpointList> CACHE = new ConcurrentHashMap<>();
+   private static final EndpointList NONE = new EndpointList(Collections.<String>singletonList(null));
+
+   private static final int[] SINGLE = {0};
+
+   private final List<String> endpoints;
+
+   private EndpointList(List<String> endpoints) {
+      this.endpoints = endpoints;
+   }
+
+   public static EndpointList parse(String endpoints) {
+      if (endpoints == null) {
+         return NONE;
+      }
+      EndpointList list = CACHE.get(endpoints);
+      if (list == null) {
+         list = new EndpointList(Collections.unmodifiableList(split(endpoints)));
+         if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+         }
+         CACHE.put(endpoints, list);
+      }
+      return list;
+   }
+
+   private static List<String> split(String endpoints) {
+      List<String> list = new ArrayList<>();
+      int start = 0;
+      for (int i = 0; i <= endpoints.length(); i++) {
+         if (i == endpoints.length() || isSeparator(endpoints.charAt(i))) {
+            if (i > start) {
+               list.add(endpoints.substring(start, i));
+            }
+            start = i + 1;
+         }
+      }
+      if (list.isEmpty()) {
+         list.add(endpoints);
+      }
+      return list;
+   }
+
+   private static boolean isSeparator(char c) {
+      return c == ',' || Character.isWhitespace(c);
+   }
+
+   /**
+    * @return the endpoints in configured order, at least one
+    */
+   public List<String> getEndpoints() {
+      return endpoints;
+   }
+
+   public String get(int index) {
+      return endpoints.get(index);
+   }
+
+   /**
+    * @return the first configured endpoint, which identifies the setting e.g. in idempotency keys
+    */
+   public String getPrimary() {
+      return endpoints.get(0);
+   }
+
+   public int size() {
+      return endpoints.size();
+   }
+
+   /**
+    * @return indices of the endpoints in the order they should be tried; must not be modified
+    */
+   int[] order() {
+      return order(EndpointHealth.get());
+   }
+
+   int[] order(EndpointHealth health) {
+      int size = endpoints.size();
+      if (size == 1) {
+         return SINGLE;
+      }
+      int[] order = new int[size];
+      long[] scores = new long[size];
+      for (int i = 0; i < size; i++) {
+         long score = score(health.getStatus(endpoints.get(i)));
+         // insertion sort, stable so that ties keep the configured order
+         int j = i;
+         while (j > 0 && scores[j - 1] > score) {
+            order[j] = order[j - 1];
+            scores[j] = scores[j - 1];
+            j--;
+         }
+         order[j] = i;
+         scores[j] = score;
+      }
+      return order;
+   }
+
+   private static long score(EndpointHealth.EndpointStatus status) {
+      switch (status.getStatus()) {
+         case UP:
+            return status.getLatencyNanos();
+         case DOWN:
+            return Long.MAX_VALUE;
+         default:
+            return Long.MAX_VALUE - 1;
+      }
+   }
+
+   @Override
+   public String toString() {
+      return endpoints.toString();
+   }
+}
@@ -0,0 +1,165 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import jenkins.model.JenkinsLocationConfiguration;
+
+/**
+ * Immutable copy of the global Mattermost settings and the Jenkins URL.
+ * <p>
+ * A new snapshot is published through a volatile reference whenever the global configuration is loaded or saved,
+ * or the Jenkins URL changes. Notifications read {@link #get()} once and see one consistent configuration, without
+ * locking or looking up descriptors.
+ */
+public final class GlobalConfigSnapshot {
+
+   private static volatile GlobalConfigSnapshot current = new GlobalConfigSnapshot(null, null, null, null, null, null,
+           false, 0, false, false, null, 0, null, false, null);
+
+   private final String endpoint;
+   private final String room;
+   private final String icon;
+   private final String buildServerUrl;
+   private final String sendAs;
+   private final String botToken;
+   private final boolean postThroughBot;
+   private final int threadReplyInterval;
+   private final boolean timingTrace;
+   private final boolean compressRequests;
+   private final TransportChoice transport;
+   private final int deliverySloSeconds;
+   private final String fallbackEndpoint;
+   private final boolean mentionCommitAuthors;
+   private final String jenkinsUrl;
+
+   GlobalConfigSnapshot(String endpoint, String room, String icon, String buildServerUrl, String sendAs, Secret botToken,
+                        boolean postThroughBot, int threadReplyInterval, boolean timingTrace, boolean compressRequests, TransportChoice transport,
+                        int deliverySloSeconds, String fallbackEndpoint, boolean mentionCommitAuthors,
+                        String jenkinsUrl) {
+      this.endpoint = endpoint;
+      this.room = room;
+      this.icon = icon;
+      this.sendAs = sendAs;
+      this.botToken = Secret.toString(botToken);
+      this.postThroughBot = postThroughBot;
+      this.threadReplyInterval = threadReplyInterval > 0 ? threadReplyInterval
+              : MattermostNotifier.DescriptorImpl.DEFAULT_THREAD_REPLY_INTERVAL;
+      this.timingTrace = timingTrace;
+      this.compressRequests = compressRequests;
+      this.transport = transport != null ? transport : TransportChoice.COMMONS_HTTPCLIENT;
+      this.deliverySloSeconds = deliverySloSeconds > 0 ? deliverySloSeconds
+              : MattermostNotifier.DescriptorImpl.DEFAULT_DELIVERY_SLO_SECONDS;
+      this.fallbackEndpoint = fallbackEndpoint;
+      this.mentionCommitAuthors = mentionCommitAuthors;
+      this.jenkinsUrl = jenkinsUrl;
+      this.buildServerUrl = buildServerUrl == null || buildServerUrl.isEmpty() ? jenkinsUrl : buildServerUrl;
+   }
+
+   public static GlobalConfigSnapshot get() {
+      return current;
+   }
+
+   static void publish(GlobalConfigSnapshot snapshot) {
+      current = snapshot;
+   }
+
+   /**
+    * @return the Jenkins URL from the location configuration, or {@code null} while Jenkins is not available
+    */
+   static String readJenkinsUrl() {
+      if (Jenkins.getInstance() == null) {
+         return null;
+      }
+      JenkinsLocationConfiguration location = JenkinsLocationConfiguration.get();
+      return location != null ? location.getUrl() : null;
+   }
+
+   public String getEndpoint() {
+      return endpoint;
+   }
+
+   public String getRoom() {
+      return room;
+   }
+
+   public String getIcon() {
+      return icon;
+   }
+
+   /**
+    * @return the configured build server URL, or the Jenkins URL if none is configured
+    */
+   public String getBuildServerUrl() {
+      return buildServerUrl;
+   }
+
+   public String getSendAs() {
+      return sendAs;
+   }
+
+   /**
+    * @return the plain bot access token, empty if none is configured
+    */
+   public String getBotToken() {
+      return botToken;
+   }
+
+   public boolean isPostThroughBot() {
+      return postThroughBot;
+   }
+
+   public int getThreadReplyInterval() {
+      return threadReplyInterval;
+   }
+
+   public boolean isTimingTrace() {
+      return timingTrace;
+   }
+
+   public boolean isCompressRequests() {
+      return compressRequests;
+   }
+
+   public TransportChoice getTransport() {
+      return transport;
+   }
+
+   public int getDeliverySloSeconds() {
+      return deliverySloSeconds;
+   }
+
+   public String getFallbackEndpoint() {
+      return fallbackEndpoint;
+   }
+
+   public boolean isMentionCommitAuthors() {
+      return mentionCommitAuthors;
+   }
+
+   public String getJenkinsUrl() {
+      return jenkinsUrl;
+   }
+
+   /**
+    * Publishes a new snapshot when the Jenkins URL is changed.
+    */
+   @Extension
+   public static class LocationListener extends SaveableListener {
+
+      @Override
+      public void onChange(Saveable o, XmlFile file) {
+         if (o instanceof JenkinsLocationConfiguration) {
+            Jenkins jenkins = Jenkins.getInstance();
+            MattermostNotifier.DescriptorImpl descriptor = jenkins != null
+                    ? jenkins.getDescriptorByType(MattermostNotifier.DescriptorImpl.class) : null;
+            if (descriptor != null) {
+               descriptor.publishSnapshot();
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,104 @@
+package jenkins.plugins.mattermost;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression of request bodies with one {@link Deflater} per thread.
+ * <p>
+ * {@link java.util.zip.GZIPOutputStream} allocates a new deflater, with its native buffers, for every stream.
+ * Here the deflater, checksum and output buffer are reset and reused, and the body is streamed through the
+ * deflater in place.
+ */
+public final class GzipEncoder {
+
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   private static final int LEVEL = Integer.getInteger(GzipEncoder.class.getName() + ".level", Deflater.DEFAULT_COMPRESSION);
+   /** buffers growing beyond this size are not kept for reuse */
+   private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+   private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+   private static final int TRAILER_LENGTH = 8;
+
+   private static final ThreadLocal<GzipEncoder> ENCODERS = new ThreadLocal<GzipEncoder>() {
+      @Override
+      protected GzipEncoder initialValue() {
+         return new GzipEncoder(LEVEL);
+      }
+   };
+
+   private final Deflater deflater;
+   private final CRC32 crc = new CRC32();
+   private byte[] buffer = new byte[8192];
+
+   GzipEncoder(int level) {
+      // raw deflate, the gzip header and trailer are written here
+      this.deflater = new Deflater(level, true);
+   }
+
+   /**
+    * Compresses the UTF-8 encoding of the text with the encoder of the calling thread.
+    */
+   public static byte[] gzip(String text) {
+      return ENCODERS.get().encode(text.getBytes(UTF_8));
+   }
+
+   /**
+    * @return the length of the UTF-8 encoding of the text, without encoding it
+    */
+   public static int utf8Length(CharSequence text) {
+      int length = 0;
+      for (int i = 0; i < text.length(); i++) {
+         char c = text.charAt(i);
+         if (c < 0x80) {
+            length++;
+         } else if (c < 0x800) {
+            length += 2;
+         } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+            length += 4;
+            i++;
+         } else if (Character.isSurrogate(c)) {
+            // unpaired surrogates are encoded as '?'
+            length++;
+         } else {
+            length += 3;
+         }
+      }
+      return length;
+   }
+
+   byte[] encode(byte[] input) {
+      deflater.reset();
+      crc.reset();
+      crc.update(input, 0, input.length);
+      deflater.setInput(input, 0, input.length);
+      deflater.finish();
+
+      System.arraycopy(HEADER, 0, buffer, 0, HEADER.length);
+      int length = HEADER.length;
+      while (!deflater.finished()) {
+         if (length == buffer.length - TRAILER_LENGTH) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+         }
+         length += deflater.deflate(buffer, length, buffer.length - TRAILER_LENGTH - length);
+      }
+      writeInt(buffer, length, (int) crc.getValue());
+      writeInt(buffer, length + 4, input.length);
+      byte[] result = Arrays.copyOf(buffer, length + TRAILER_LENGTH);
+      if (buffer.length > MAX_RETAINED_BUFFER) {
+         buffer = new byte[8192];
+      }
+      return result;
+   }
+
+   private static void writeInt(byte[] buffer, int offset, int value) {
+      // gzip stores numbers little-endian
+      buffer[offset] = (byte) value;
+      buffer[offset + 1] = (byte) (value >>> 8);
+      buffer[offset + 2] = (byte) (value >>> 16);
+      buffer[offset + 3] = (byte) (value >>> 24);
+   }
+}
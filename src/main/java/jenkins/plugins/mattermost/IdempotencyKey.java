@@ -0,0 +1,56 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.AbstractBuild;
+
+/**
+ * Deterministic keys identifying one notification event of one build, used to suppress duplicate posts.
+ */
+public final class IdempotencyKey {
+
+   public static final String STARTED = "started";
+   public static final String COMPLETED = "completed";
+
+   private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+   private static final long FNV_PRIME = 0x100000001b3L;
+
+   private IdempotencyKey() {
+   }
+
+   public static String of(String job, int buildNumber, String event) {
+      return job + '#' + buildNumber + '/' + event;
+   }
+
+   @SuppressWarnings("rawtypes")
+   static String of(AbstractBuild build, String event) {
+      return of(build.getProject().getFullName(), build.getNumber(), event);
+   }
+
+   /**
+    * Key of a continuation post of a message that was split over several posts; part 1 uses the event key itself.
+    */
+   static String forPart(String eventKey, int part) {
+      return eventKey + "/part" + part;
+   }
+
+   /**
+    * Narrows an event key down to a single delivery target, so that every room of a notification is tracked separately.
+    */
+   static String forTarget(String eventKey, String endpoint, String target) {
+      return eventKey + '>' + target + '@' + endpoint;
+   }
+
+   /**
+    * 64-bit FNV-1a hash of the key; collisions are negligible for the few thousand keys kept at a time.
+    */
+   static long fingerprint(String key) {
+      long hash = FNV_OFFSET_BASIS;
+      for (int i = 0; i < key.length(); i++) {
+         char c = key.charAt(i);
+         hash ^= (c & 0xff);
+         hash *= FNV_PRIME;
+         hash ^= (c >>> 8);
+         hash *= FNV_PRIME;
+      }
+      return hash;
+   }
+}
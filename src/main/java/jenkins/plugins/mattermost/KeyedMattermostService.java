@@ -0,0 +1,16 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONObject;
+
+/**
+ * A {@link MattermostService} that suppresses duplicate posts of the same build event, e.g. when a notification is
+ * retried after a restart.
+ */
+public interface KeyedMattermostService extends MattermostService {
+
+	/**
+	 * Publishes a notification at most once per target for the given event key, see {@link IdempotencyKey}.
+	 * A {@code null} key disables duplicate suppression.
+	 */
+	boolean publish(JSONObject json, String color, String eventKey);
+}
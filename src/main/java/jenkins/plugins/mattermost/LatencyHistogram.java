@@ -0,0 +1,115 @@
+package jenkins.plugins.mattermost;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, with log-linear buckets in the style of HdrHistogram:
+ * every power of two is split into 8 sub-buckets, so recorded values are kept with a relative error below 12.5%
+ * in a fixed 4 KB of counters.
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BUCKET_BITS = 3;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+   private final AtomicLong count = new AtomicLong();
+   private final AtomicLong sum = new AtomicLong();
+   private final AtomicLong max = new AtomicLong();
+
+   public void record(long nanos) {
+      long value = Math.max(0, nanos);
+      counts.incrementAndGet(index(value));
+      count.incrementAndGet();
+      sum.addAndGet(value);
+      long currentMax;
+      while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+         // retry
+      }
+   }
+
+   /**
+    * Adds the values recorded by another histogram to this one.
+    */
+   public void add(LatencyHistogram other) {
+      for (int i = 0; i < BUCKETS; i++) {
+         long bucket = other.counts.get(i);
+         if (bucket != 0) {
+            counts.addAndGet(i, bucket);
+         }
+      }
+      count.addAndGet(other.count.get());
+      sum.addAndGet(other.sum.get());
+      long otherMax = other.max.get();
+      long currentMax;
+      while (otherMax > (currentMax = max.get()) && !max.compareAndSet(currentMax, otherMax)) {
+         // retry
+      }
+   }
+
+   static int index(long value) {
+      if (value < SUB_BUCKETS) {
+         return (int) value;
+      }
+      int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+      int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+      return (shift + 1) * SUB_BUCKETS + subBucket;
+   }
+
+   static long lowerBound(int index) {
+      if (index < SUB_BUCKETS) {
+         return index;
+      }
+      int shift = index / SUB_BUCKETS - 1;
+      return ((long) (SUB_BUCKETS + index % SUB_BUCKETS)) << shift;
+   }
+
+   public long getCount() {
+      return count.get();
+   }
+
+   public long getMax() {
+      return max.get();
+   }
+
+   public long getMean() {
+      long n = count.get();
+      return n == 0 ? 0 : sum.get() / n;
+   }
+
+   /**
+    * @return the upper bound of the bucket holding the given percentile (0..1), capped at the recorded maximum
+    */
+   public long getPercentile(double percentile) {
+      long n = count.get();
+      if (n == 0) {
+         return 0;
+      }
+      long target = Math.max(1, (long) Math.ceil(percentile * n));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += counts.get(i);
+         if (seen >= target) {
+            long upperBound = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+            return Math.min(upperBound, max.get());
+         }
+      }
+      return max.get();
+   }
+
+   public String getPercentileMillis(double percentile) {
+      return toMillis(getPercentile(percentile));
+   }
+
+   public String getMaxMillis() {
+      return toMillis(getMax());
+   }
+
+   static String toMillis(long nanos) {
+      return String.format(Locale.ROOT, "%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+   }
+}
@@ -0,0 +1,206 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Queue;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves the settings of the deprecated {@link MattermostNotifier.MattermostJobProperty} into the jobs'
+ * {@link MattermostNotifier} in the background, so that rewriting many job configurations does not hold up startup.
+ * <p>
+ * Jobs are migrated in parallel batches. Whether a job still needs migrating is decided per job by the legacy
+ * property, which is removed from the saved job configuration once migrated, so a restart resumes with the remaining
+ * jobs and jobs added later are migrated too. Builds of jobs waiting for their migration are held in the queue, so a
+ * notifier is never changed while a build uses it.
+ */
+public class LegacyConfigMigration {
+
+   private static final Logger logger = Logger.getLogger(LegacyConfigMigration.class.getName());
+
+   private static final int THREADS = Integer.getInteger(LegacyConfigMigration.class.getName() + ".threads", 4);
+   private static final int BATCH_SIZE = Integer.getInteger(LegacyConfigMigration.class.getName() + ".batchSize", 100);
+
+   private static volatile LegacyConfigMigration current;
+
+   private final int threads;
+   private final int batchSize;
+   private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+   public LegacyConfigMigration() {
+      this(THREADS, BATCH_SIZE);
+   }
+
+   LegacyConfigMigration(int threads, int batchSize) {
+      this.threads = Math.max(1, threads);
+      this.batchSize = Math.max(1, batchSize);
+   }
+
+   /**
+    * Migrates the given jobs on a background thread and returns right away. Until a job is migrated its builds do not
+    * start.
+    */
+   public void start(List<? extends AbstractProject<?, ?>> projects) {
+      final List<AbstractProject<?, ?>> legacy = select(projects);
+      if (legacy.isEmpty()) {
+         logger.fine("No Mattermost settings to migrate");
+         return;
+      }
+      current = this;
+      Thread thread = new NamingThreadFactory(new DaemonThreadFactory(), "Mattermost settings migration")
+              .newThread(new Runnable() {
+                 @Override
+                 public void run() {
+                    try {
+                       migrateAll(legacy);
+                    } catch (RuntimeException e) {
+                       logger.log(Level.WARNING, "Mattermost settings migration failed, it is resumed on the next start", e);
+                    } finally {
+                       // jobs that failed keep their legacy settings and run with them, as before the migration
+                       pending.clear();
+                    }
+                 }
+              });
+      thread.start();
+   }
+
+   /**
+    * Migrates the jobs that still have legacy settings, waiting for all batches to finish.
+    *
+    * @return the number of jobs processed by this call
+    */
+   int migrate(List<? extends AbstractProject<?, ?>> projects) {
+      return migrateAll(select(projects));
+   }
+
+   /**
+    * @return the jobs that still have legacy settings, which are marked as pending
+    */
+   private List<AbstractProject<?, ?>> select(List<? extends AbstractProject<?, ?>> projects) {
+      List<AbstractProject<?, ?>> legacy = new ArrayList<>();
+      for (AbstractProject<?, ?> project : projects) {
+         if (needsMigration(project)) {
+            legacy.add(project);
+            pending.add(project.getFullName());
+         }
+      }
+      return legacy;
+   }
+
+   private int migrateAll(List<AbstractProject<?, ?>> legacy) {
+      if (legacy.isEmpty()) {
+         return 0;
+      }
+      logger.info("Starting Settings Migration Process for " + legacy.size() + " jobs");
+
+      ExecutorService executor = Executors.newFixedThreadPool(threads,
+              new NamingThreadFactory(new DaemonThreadFactory(), "Mattermost settings migration worker"));
+      List<Future<Boolean>> batches = new ArrayList<>();
+      try {
+         for (int start = 0; start < legacy.size(); start += batchSize) {
+            final List<AbstractProject<?, ?>> batch = legacy.subList(start, Math.min(start + batchSize, legacy.size()));
+            batches.add(executor.submit(new Callable<Boolean>() {
+               @Override
+               public Boolean call() {
+                  return migrateBatch(batch);
+               }
+            }));
+         }
+         boolean failed = false;
+         for (Future<Boolean> batch : batches) {
+            try {
+               if (!batch.get()) {
+                  failed = true;
+               }
+            } catch (ExecutionException e) {
+               logger.log(Level.WARNING, "Error migrating Mattermost settings", e.getCause());
+               failed = true;
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               return legacy.size();
+            }
+         }
+         if (!failed) {
+            logger.info("Settings Migration Process completed");
+         } else {
+            logger.warning("Settings Migration Process finished with errors, failed jobs are retried on the next start");
+         }
+      } finally {
+         executor.shutdown();
+      }
+      return legacy.size();
+   }
+
+   /**
+    * @return {@code false} if some job could not be migrated
+    */
+   private boolean migrateBatch(List<AbstractProject<?, ?>> batch) {
+      boolean result = true;
+      for (AbstractProject<?, ?> project : batch) {
+         try {
+            migrate(project);
+         } catch (IOException | RuntimeException e) {
+            // the job keeps its legacy settings, so it is tried again on the next start
+            logger.log(Level.SEVERE, "Could not migrate Mattermost settings of " + project.getFullName(), e);
+            result = false;
+         } finally {
+            pending.remove(project.getFullName());
+         }
+      }
+      return result;
+   }
+
+   boolean isPending(String fullName) {
+      return pending.contains(fullName);
+   }
+
+   @SuppressWarnings("deprecation")
+   boolean needsMigration(AbstractProject<?, ?> project) {
+      return project.getProperty(MattermostNotifier.MattermostJobProperty.class) != null;
+   }
+
+   void migrate(AbstractProject<?, ?> project) throws IOException {
+      MattermostNotifier.Migrator.migrate(project);
+   }
+
+   /**
+    * Holds builds of jobs whose settings are still being migrated.
+    */
+   @Extension
+   public static class MigrationDispatcher extends QueueTaskDispatcher {
+
+      private static final CauseOfBlockage MIGRATING = new CauseOfBlockage() {
+         @Override
+         public String getShortDescription() {
+            return "Waiting for the Mattermost settings of this job to be migrated";
+         }
+      };
+
+      @Override
+      public CauseOfBlockage canRun(Queue.Item item) {
+         LegacyConfigMigration migration = current;
+         if (migration != null && item.task instanceof AbstractProject
+                 && migration.isPending(((AbstractProject<?, ?>) item.task).getFullName())) {
+            return MIGRATING;
+         }
+         return null;
+      }
+   }
+}
@@ -24,7 +24,18 @@ public class MattermostListener extends RunListener<AbstractBuild> {
 
 	@Override
 	public void onCompleted(AbstractBuild r, TaskListener listener) {
-		getNotifier(r.getProject(), listener).completed(r);
+		FineGrainedNotifier notifier = getNotifier(r.getProject(), listener);
+		// builds without a Mattermost notifier would only crowd the trace buffer
+		if (notifier instanceof DisabledNotifier) {
+			notifier.completed(r);
+		} else {
+			NotificationTrace trace = NotificationTrace.start("listener", r.getFullDisplayName() + " completed");
+			try {
+				notifier.completed(r);
+			} finally {
+				trace.close();
+			}
+		}
 		super.onCompleted(r, listener);
 	}
 
@@ -0,0 +1,62 @@
+package jenkins.plugins.mattermost;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * "Manage Jenkins" page showing the {@link NotificationMetrics} of the Mattermost notifications.
+ */
+@Extension
+public class MattermostManagementLink extends ManagementLink {
+
+   @Override
+   public String getIconFileName() {
+      return "notepad.png";
+   }
+
+   @Override
+   public String getUrlName() {
+      return "mattermost";
+   }
+
+   @Override
+   public String getDisplayName() {
+      return "Mattermost Notifications";
+   }
+
+   @Override
+   public String getDescription() {
+      return "Delivery latency, status codes and queue depth of the Mattermost notifications.";
+   }
+
+   public NotificationMetrics getMetrics() {
+      return NotificationMetrics.get();
+   }
+
+   public DeliveryWatchdog getWatchdog() {
+      return DeliveryWatchdog.get();
+   }
+
+   public List<NotificationTiming.JobTimings> getJobTimings() {
+      return NotificationTiming.getJobs();
+   }
+
+   public int getTraceCapacity() {
+      return NotificationTrace.getCapacity();
+   }
+
+   /**
+    * Downloads the recently completed {@link NotificationTrace}s as a JSON array.
+    */
+   public void doTraces(StaplerResponse rsp) throws IOException {
+      Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+      rsp.setContentType("application/json;charset=UTF-8");
+      rsp.setHeader("Content-Disposition", "attachment; filename=mattermost-traces.json");
+      rsp.getWriter().write(NotificationTrace.getCompletedAsJSON().toString());
+   }
+}
@@ -0,0 +1,74 @@
+package jenkins.plugins.mattermost;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Publishes the totals of the {@link NotificationMetrics} through the Metrics plugin, when it is installed.
+ */
+@Extension(optional = true)
+public class MattermostMetricProvider extends MetricProvider {
+
+   private static final String PREFIX = "jenkins.plugins.mattermost";
+
+   @Override
+   public MetricSet getMetricSet() {
+      final NotificationMetrics metrics = NotificationMetrics.get();
+      return new MetricSet() {
+         @Override
+         public Map<String, Metric> getMetrics() {
+            Map<String, Metric> result = new HashMap<>();
+            result.put(MetricRegistry.name(PREFIX, "posts", "succeeded"), new Gauge<Long>() {
+               @Override
+               public Long getValue() {
+                  return metrics.getSuccesses();
+               }
+            });
+            result.put(MetricRegistry.name(PREFIX, "posts", "failed"), new Gauge<Long>() {
+               @Override
+               public Long getValue() {
+                  return metrics.getFailures();
+               }
+            });
+            result.put(MetricRegistry.name(PREFIX, "posts", "retries"), new Gauge<Long>() {
+               @Override
+               public Long getValue() {
+                  return metrics.getRetries();
+               }
+            });
+            result.put(MetricRegistry.name(PREFIX, "posts", "duplicates"), new Gauge<Long>() {
+               @Override
+               public Long getValue() {
+                  return metrics.getDuplicates();
+               }
+            });
+            result.put(MetricRegistry.name(PREFIX, "posts", "dropped"), new Gauge<Long>() {
+               @Override
+               public Long getValue() {
+                  return metrics.getDrops();
+               }
+            });
+            result.put(MetricRegistry.name(PREFIX, "queue", "depth"), new Gauge<Integer>() {
+               @Override
+               public Integer getValue() {
+                  return metrics.getQueueDepth();
+               }
+            });
+            result.put(MetricRegistry.name(PREFIX, "render", "p99"), new Gauge<Long>() {
+               @Override
+               public Long getValue() {
+                  return metrics.getRenderTime().getPercentile(0.99);
+               }
+            });
+            return result;
+         }
+      };
+   }
+}
@@ -13,10 +13,11 @@ import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
+import hudson.util.Secret;
 import jenkins.model.Jenkins;
-import jenkins.model.JenkinsLocationConfiguration;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
@@ -24,6 +25,8 @@ import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.export.Exported;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -74,8 +77,7 @@ public class MattermostNotifier extends Notifier {
 
    public String getBuildServerUrl() {
       if (buildServerUrl == null || buildServerUrl.equals("")) {
-         JenkinsLocationConfiguration jenkinsConfig = new JenkinsLocationConfiguration();
-         return jenkinsConfig.getUrl();
+         return GlobalConfigSnapshot.get().getJenkinsUrl();
       } else {
          return buildServerUrl;
       }
@@ -254,32 +256,41 @@ public class MattermostNotifier extends Notifier {
    }
 
    public MattermostService newMattermostService(AbstractBuild r, BuildListener listener) {
+      GlobalConfigSnapshot global = GlobalConfigSnapshot.get();
       String endpoint = this.endpoint;
       if (StringUtils.isEmpty(endpoint)) {
-         endpoint = getDescriptor().getEndpoint();
+         endpoint = global.getEndpoint();
       }
       String room = this.room;
       if (StringUtils.isEmpty(room)) {
-         room = getDescriptor().getRoom();
+         room = global.getRoom();
       }
 
       String icon = this.icon;
       if (StringUtils.isEmpty(icon)) {
-         icon = getDescriptor().getIcon();
+         icon = global.getIcon();
       }
 
       EnvVars env = null;
+      NotificationTiming.begin();
       try {
          env = r.getEnvironment(listener);
       } catch (Exception e) {
          listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
          env = new EnvVars();
+      } finally {
+         NotificationTiming.end("environment");
       }
       endpoint = env.expand(endpoint);
       room = env.expand(room);
       icon = env.expand(icon);
 
-      return new StandardMattermostService(endpoint, room, icon);
+      String botToken = global.getBotToken();
+      // the API needs a channel, jobs posting to the webhook's default channel keep using the webhook
+      if (global.isPostThroughBot() && !StringUtils.isEmpty(botToken) && !StringUtils.isBlank(room)) {
+         return new RestMattermostService(endpoint, room, icon, botToken);
+      }
+      return global.getTransport().newService(endpoint, room, icon);
    }
 
    @Override
@@ -293,8 +304,13 @@ public class MattermostNotifier extends Notifier {
          Map<Descriptor<Publisher>, Publisher> map = build.getProject().getPublishersList().toMap();
          for (Publisher publisher : map.values()) {
             if (publisher instanceof MattermostNotifier) {
-               logger.info("Invoking Started...");
-               new ActiveNotifier((MattermostNotifier) publisher, listener).started(build);
+               logger.fine("Invoking Started...");
+               NotificationTrace trace = NotificationTrace.start("notifier", build.getFullDisplayName() + " started");
+               try {
+                  new ActiveNotifier((MattermostNotifier) publisher, listener).started(build);
+               } finally {
+                  trace.close();
+               }
             }
          }
       }
@@ -309,11 +325,33 @@ public class MattermostNotifier extends Notifier {
       private String icon;
       private String buildServerUrl;
       private String sendAs;
+      private Secret botToken;
+      private boolean postThroughBot;
+      private int threadReplyInterval;
+      private boolean timingTrace;
+      private boolean compressRequests;
+      private TransportChoice transport;
+      private int deliverySloSeconds;
+      private String fallbackEndpoint;
+      private boolean mentionCommitAuthors;
 
       public static final CommitInfoChoice[] COMMIT_INFO_CHOICES = CommitInfoChoice.values();
+      public static final TransportChoice[] TRANSPORT_CHOICES = TransportChoice.values();
+      public static final int DEFAULT_THREAD_REPLY_INTERVAL = 10;
+      public static final int DEFAULT_DELIVERY_SLO_SECONDS = 300;
 
       public DescriptorImpl() {
          load();
+         publishSnapshot();
+      }
+
+      /**
+       * Publishes the current settings as the {@link GlobalConfigSnapshot} read by notifications.
+       */
+      void publishSnapshot() {
+         GlobalConfigSnapshot.publish(new GlobalConfigSnapshot(endpoint, room, icon, buildServerUrl, sendAs, botToken,
+                 postThroughBot, threadReplyInterval, timingTrace, compressRequests, getTransport(), deliverySloSeconds, fallbackEndpoint,
+                 mentionCommitAuthors, GlobalConfigSnapshot.readJenkinsUrl()));
       }
 
       public String getEndpoint() {
@@ -330,8 +368,7 @@ public class MattermostNotifier extends Notifier {
 
       public String getBuildServerUrl() {
          if (buildServerUrl == null || buildServerUrl.equals("")) {
-            JenkinsLocationConfiguration jenkinsConfig = new JenkinsLocationConfiguration();
-            return jenkinsConfig.getUrl();
+            return GlobalConfigSnapshot.get().getJenkinsUrl();
          } else {
             return buildServerUrl;
          }
@@ -341,6 +378,66 @@ public class MattermostNotifier extends Notifier {
          return sendAs;
       }
 
+      public Secret getBotToken() {
+         return botToken;
+      }
+
+      /**
+       * Whether jobs with a channel post through the REST API with the bot access token instead of the webhook.
+       */
+      public boolean isPostThroughBot() {
+         return postThroughBot;
+      }
+
+      /**
+       * Minimum number of seconds between two replies in a build thread.
+       */
+      public int getThreadReplyInterval() {
+         return threadReplyInterval > 0 ? threadReplyInterval : DEFAULT_THREAD_REPLY_INTERVAL;
+      }
+
+      /**
+       * Whether a breakdown of each notification's duration is printed to the build log.
+       */
+      public boolean isTimingTrace() {
+         return timingTrace;
+      }
+
+      /**
+       * Whether large webhook requests are sent gzip-compressed, for servers behind a proxy that decompresses them.
+       */
+      public boolean isCompressRequests() {
+         return compressRequests;
+      }
+
+      /**
+       * HTTP client used to post to incoming webhooks.
+       */
+      public TransportChoice getTransport() {
+         return transport != null ? transport : TransportChoice.COMMONS_HTTPCLIENT;
+      }
+
+      /**
+       * Maximum acceptable delay between a build event and the delivery of its notification.
+       */
+      public int getDeliverySloSeconds() {
+         return deliverySloSeconds > 0 ? deliverySloSeconds : DEFAULT_DELIVERY_SLO_SECONDS;
+      }
+
+      /**
+       * Webhook that receives an alert when notifications are late, ideally on another Mattermost server.
+       */
+      public String getFallbackEndpoint() {
+         return fallbackEndpoint;
+      }
+
+      /**
+       * Whether commit authors are @mentioned in commit lists, which requires a bot access token.
+       */
+      public boolean isMentionCommitAuthors() {
+         return mentionCommitAuthors;
+      }
+
       public boolean isApplicable(Class<? extends AbstractProject> aClass) {
          return true;
       }
@@ -365,6 +462,7 @@ public class MattermostNotifier extends Notifier {
          CommitInfoChoice commitInfoChoice = CommitInfoChoice.forDisplayName(sr.getParameter("slackCommitInfoChoice"));
          boolean includeCustomMessage = "on".equals(sr.getParameter("includeCustomMessage"));
          String customMessage = sr.getParameter("customMessage");
+         preparseTargets(endpoint, room, icon);
          return new MattermostNotifier(endpoint, room, icon, buildServerUrl, sendAs, startNotification, notifyAborted,
                  notifyFailure, notifyNotBuilt, notifySuccess, notifyUnstable, notifyBackToNormal, notifyRepeatedFailure,
                  includeTestSummary, commitInfoChoice, includeCustomMessage, customMessage);
@@ -377,19 +475,45 @@ public class MattermostNotifier extends Notifier {
          icon = sr.getParameter("mattermostIcon");
          buildServerUrl = sr.getParameter("mattermostBuildServerUrl");
          sendAs = sr.getParameter("mattermostSendAs");
+         botToken = Secret.fromString(sr.getParameter("mattermostBotToken"));
+         postThroughBot = "on".equals(sr.getParameter("mattermostPostThroughBot"));
+         threadReplyInterval = NumberUtils.toInt(sr.getParameter("mattermostThreadReplyInterval"), 0);
+         timingTrace = "on".equals(sr.getParameter("mattermostTimingTrace"));
+         compressRequests = "on".equals(sr.getParameter("mattermostCompressRequests"));
+         transport = TransportChoice.forDisplayName(sr.getParameter("mattermostTransport"));
+         preparseTargets(null, null, null);
+         deliverySloSeconds = NumberUtils.toInt(sr.getParameter("mattermostDeliverySloSeconds"), 0);
+         fallbackEndpoint = sr.getParameter("mattermostFallbackEndpoint");
+         mentionCommitAuthors = "on".equals(sr.getParameter("mattermostMentionCommitAuthors"));
          if (buildServerUrl == null || buildServerUrl.equals("")) {
-            JenkinsLocationConfiguration jenkinsConfig = new JenkinsLocationConfiguration();
-            buildServerUrl = jenkinsConfig.getUrl();
+            buildServerUrl = GlobalConfigSnapshot.readJenkinsUrl();
          }
          if (buildServerUrl != null && !buildServerUrl.endsWith("/")) {
             buildServerUrl = buildServerUrl + "/";
          }
          save();
+         publishSnapshot();
          return super.configure(sr, formData);
       }
 
-      MattermostService getMattermostService(final String endpoint, final String room, final String icon) {
-         return new StandardMattermostService(endpoint, room, icon);
+      /**
+       * Fills the {@link DeliveryTarget} cache when a configuration is saved, unless build variables have to be
+       * expanded first.
+       */
+      private void preparseTargets(String endpoint, String room, String icon) {
+         String targetEndpoint = StringUtils.isEmpty(endpoint) ? this.endpoint : endpoint;
+         String targetRoom = StringUtils.isEmpty(room) ? this.room : room;
+         String targetIcon = StringUtils.isEmpty(icon) ? this.icon : icon;
+         if (!StringUtils.contains(targetEndpoint, '$') && !StringUtils.contains(targetRoom, '$')
+                 && !StringUtils.contains(targetIcon, '$')) {
+            for (String url : EndpointList.parse(targetEndpoint).getEndpoints()) {
+               DeliveryTarget.parse(url, targetRoom, targetIcon);
+            }
+         }
+      }
+
+      EndpointHealth getEndpointHealth() {
+         return EndpointHealth.get();
       }
 
       @Override
@@ -397,6 +521,28 @@ public class MattermostNotifier extends Notifier {
          return "Mattermost Notifications";
       }
 
+      /**
+       * Warns about endpoints found unreachable by the last health check, without contacting them.
+       */
+      public FormValidation doCheckEndpoint(@QueryParameter String value) {
+         if (StringUtils.isEmpty(value) || value.contains("$")) {
+            return FormValidation.ok();
+         }
+         EndpointList endpoints = EndpointList.parse(value);
+         for (String endpoint : endpoints.getEndpoints()) {
+            EndpointHealth.EndpointStatus status = getEndpointHealth().getStatus(endpoint);
+            if (status.getStatus() == EndpointHealth.Status.DOWN) {
+               return FormValidation.warning(describe(endpoints, endpoint) + "was unreachable " + status.getAgeSeconds()
+                       + " seconds ago: " + status.getMessage());
+            }
+         }
+         return FormValidation.ok();
+      }
+
+      private static String describe(EndpointList endpoints, String endpoint) {
+         return endpoints.size() == 1 ? "Mattermost " : NotificationMetrics.endpointLabel(endpoint) + " ";
+      }
+
       public FormValidation doTestConnection(@QueryParameter("mattermostEndpoint") final String endpoint,
                                              @QueryParameter("mattermostRoom") final String room,
                                              @QueryParameter("mattermostIcon") final String icon,
@@ -406,27 +552,32 @@ public class MattermostNotifier extends Notifier {
             if (StringUtils.isEmpty(targetEndpoint)) {
                targetEndpoint = this.endpoint;
             }
-            String targetRoom = room;
-            if (StringUtils.isEmpty(targetRoom)) {
-               targetRoom = this.room;
+            if (StringUtils.isEmpty(targetEndpoint)) {
+               return FormValidation.error("No endpoint configured");
+            }
+            // ping the server instead of posting, so testing does not spam the channel
+            EndpointList endpoints = EndpointList.parse(targetEndpoint);
+            if (endpoints.size() == 1) {
+               EndpointHealth.EndpointStatus status = getEndpointHealth().check(targetEndpoint);
+               return status.getStatus() == EndpointHealth.Status.UP
+                       ? FormValidation.ok("Success: " + status.getMessage())
+                       : FormValidation.error("Failure: " + status.getMessage());
             }
-            String targetIcon = icon;
-            if (StringUtils.isEmpty(targetIcon)) {
-               targetIcon = this.icon;
+            int up = 0;
+            StringBuilder messages = new StringBuilder();
+            for (String url : endpoints.getEndpoints()) {
+               EndpointHealth.EndpointStatus status = getEndpointHealth().check(url);
+               if (status.getStatus() == EndpointHealth.Status.UP) {
+                  up++;
+               }
+               messages.append(messages.length() == 0 ? "" : "; ").append(NotificationMetrics.endpointLabel(url))
+                       .append(": ").append(status.getMessage());
             }
-            String targetBuildServerUrl = buildServerUrl;
-            if (StringUtils.isEmpty(targetBuildServerUrl)) {
-               targetBuildServerUrl = this.buildServerUrl;
+            if (up == endpoints.size()) {
+               return FormValidation.ok("Success: " + messages);
             }
-            MattermostService testMattermostService = getMattermostService(targetEndpoint, targetRoom, targetIcon);
-            String message = "Mattermost/Jenkins plugin: you're all set! (parameters: " +
-                    "endpoint='" + targetEndpoint + "', " +
-                    "room='" + targetRoom + "', " +
-                    "icon='" + targetIcon + "', " +
-                    "buildServerUrl='" + targetBuildServerUrl + "'" +
-                    ")";
-            boolean success = testMattermostService.publish(message, "good");
-            return success ? FormValidation.ok("Success") : FormValidation.error("Failure");
+            return up > 0 ? FormValidation.warning("Partial failure, notifications fail over to reachable endpoints: " + messages)
+                    : FormValidation.error("Failure: " + messages);
          } catch (Exception e) {
             return FormValidation.error("Client error : " + e.getMessage());
          }
@@ -569,66 +720,68 @@ public class MattermostNotifier extends Notifier {
 
    @Extension
    public static final class Migrator extends ItemListener {
-      @SuppressWarnings("deprecation")
       @Override
       public void onLoaded() {
-         logger.info("Starting Settings Migration Process");
-         for (AbstractProject<?, ?> p : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
-            logger.info("processing Job: " + p.getName());
+         // rewriting job configurations can take long, so it is done in the background
+         Jenkins jenkins = Jenkins.getInstance();
+         List<AbstractProject<?, ?>> projects = new ArrayList<>();
+         for (AbstractProject<?, ?> p : jenkins.getAllItems(AbstractProject.class)) {
+            projects.add(p);
+         }
+         new LegacyConfigMigration().start(projects);
+      }
 
-            final MattermostJobProperty mattermostJobProperty = p.getProperty(MattermostJobProperty.class);
+      @SuppressWarnings("deprecation")
+      static void migrate(AbstractProject<?, ?> p) throws IOException {
+         final MattermostJobProperty mattermostJobProperty = p.getProperty(MattermostJobProperty.class);
 
-            if (mattermostJobProperty == null) {
-               logger.info(String
-                       .format("Configuration is already up to date for \"%s\", skipping migration",
-                               p.getName()));
-               continue;
+         if (mattermostJobProperty == null) {
+            if (logger.isLoggable(Level.FINE)) {
+               logger.fine(String.format("Configuration is already up to date for \"%s\", skipping migration",
+                       p.getFullName()));
             }
+            return;
+         }
 
-            MattermostNotifier mattermostNotifier = p.getPublishersList().get(MattermostNotifier.class);
-
-            if (mattermostNotifier == null) {
-               logger.info(String
-                       .format("Configuration does not have a notifier for \"%s\", not migrating settings",
-                               p.getName()));
-            } else {
+         MattermostNotifier mattermostNotifier = p.getPublishersList().get(MattermostNotifier.class);
 
-               //map settings
-               if (StringUtils.isBlank(mattermostNotifier.endpoint)) {
-                  mattermostNotifier.endpoint = mattermostJobProperty.getEndpoint();
-               }
-               if (StringUtils.isBlank(mattermostNotifier.icon)) {
-                  mattermostNotifier.icon = mattermostJobProperty.getIcon();
-               }
-               if (StringUtils.isBlank(mattermostNotifier.room)) {
-                  mattermostNotifier.room = mattermostJobProperty.getRoom();
-               }
+         if (mattermostNotifier == null) {
+            logger.info(String
+                    .format("Configuration does not have a notifier for \"%s\", not migrating settings",
+                            p.getFullName()));
+         } else {
 
-               mattermostNotifier.startNotification = mattermostJobProperty.getStartNotification();
+            //map settings
+            if (StringUtils.isBlank(mattermostNotifier.endpoint)) {
+               mattermostNotifier.endpoint = mattermostJobProperty.getEndpoint();
+            }
+            if (StringUtils.isBlank(mattermostNotifier.icon)) {
+               mattermostNotifier.icon = mattermostJobProperty.getIcon();
+            }
+            if (StringUtils.isBlank(mattermostNotifier.room)) {
+               mattermostNotifier.room = mattermostJobProperty.getRoom();
+            }
 
-               mattermostNotifier.notifyAborted = mattermostJobProperty.getNotifyAborted();
-               mattermostNotifier.notifyFailure = mattermostJobProperty.getNotifyFailure();
-               mattermostNotifier.notifyNotBuilt = mattermostJobProperty.getNotifyNotBuilt();
-               mattermostNotifier.notifySuccess = mattermostJobProperty.getNotifySuccess();
-               mattermostNotifier.notifyUnstable = mattermostJobProperty.getNotifyUnstable();
-               mattermostNotifier.notifyBackToNormal = mattermostJobProperty.getNotifyBackToNormal();
-               mattermostNotifier.notifyRepeatedFailure = mattermostJobProperty.getNotifyRepeatedFailure();
+            mattermostNotifier.startNotification = mattermostJobProperty.getStartNotification();
 
-               mattermostNotifier.includeTestSummary = mattermostJobProperty.includeTestSummary();
-               mattermostNotifier.commitInfoChoice = mattermostJobProperty.getShowCommitList() ? CommitInfoChoice.AUTHORS_AND_TITLES : CommitInfoChoice.NONE;
-               mattermostNotifier.includeCustomMessage = mattermostJobProperty.includeCustomMessage();
-               mattermostNotifier.customMessage = mattermostJobProperty.getCustomMessage();
-            }
+            mattermostNotifier.notifyAborted = mattermostJobProperty.getNotifyAborted();
+            mattermostNotifier.notifyFailure = mattermostJobProperty.getNotifyFailure();
+            mattermostNotifier.notifyNotBuilt = mattermostJobProperty.getNotifyNotBuilt();
+            mattermostNotifier.notifySuccess = mattermostJobProperty.getNotifySuccess();
+            mattermostNotifier.notifyUnstable = mattermostJobProperty.getNotifyUnstable();
+            mattermostNotifier.notifyBackToNormal = mattermostJobProperty.getNotifyBackToNormal();
+            mattermostNotifier.notifyRepeatedFailure = mattermostJobProperty.getNotifyRepeatedFailure();
 
-            try {
-               //property section is not used anymore - remove
-               p.removeProperty(MattermostJobProperty.class);
-               p.save();
-               logger.info("Configuration updated successfully");
-            } catch (IOException e) {
-               logger.log(Level.SEVERE, e.getMessage(), e);
-            }
+            mattermostNotifier.includeTestSummary = mattermostJobProperty.includeTestSummary();
+            mattermostNotifier.commitInfoChoice = mattermostJobProperty.getShowCommitList() ? CommitInfoChoice.AUTHORS_AND_TITLES : CommitInfoChoice.NONE;
+            mattermostNotifier.includeCustomMessage = mattermostJobProperty.includeCustomMessage();
+            mattermostNotifier.customMessage = mattermostJobProperty.getCustomMessage();
          }
+
+         //property section is not used anymore - remove
+         p.removeProperty(MattermostJobProperty.class);
+         p.save();
+         logger.info("Configuration of \"" + p.getFullName() + "\" updated successfully");
       }
    }
 }
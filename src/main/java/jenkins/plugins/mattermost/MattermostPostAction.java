@@ -0,0 +1,56 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the ids of the posts a build notification created, so that later notifications can edit them.
+ */
+public class MattermostPostAction extends InvisibleAction {
+
+   private final String roomSet;
+   private final String[] rooms;
+   private final String[] postIds;
+
+   public MattermostPostAction(Map<String, String> postIds) {
+      this(null, postIds);
+   }
+
+   /**
+    * @param roomSet the rooms setting the posts were made for, to tell apart the posts of several threads of one run
+    */
+   public MattermostPostAction(String roomSet, Map<String, String> postIds) {
+      this.roomSet = roomSet;
+      this.rooms = new String[postIds.size()];
+      this.postIds = new String[postIds.size()];
+      int i = 0;
+      for (Map.Entry<String, String> entry : postIds.entrySet()) {
+         this.rooms[i] = entry.getKey();
+         this.postIds[i] = entry.getValue();
+         i++;
+      }
+   }
+
+   public Map<String, String> getPostIds() {
+      Map<String, String> result = new LinkedHashMap<>();
+      for (int i = 0; i < rooms.length; i++) {
+         result.put(rooms[i], postIds[i]);
+      }
+      return result;
+   }
+
+   /**
+    * @return the action recording the posts made for the given rooms setting, {@code null} if there is none
+    */
+   public static MattermostPostAction forRooms(Run<?, ?> run, String roomSet) {
+      for (MattermostPostAction action : run.getActions(MattermostPostAction.class)) {
+         if (roomSet.equals(action.roomSet)) {
+            return action;
+         }
+      }
+      return null;
+   }
+}
@@ -0,0 +1,159 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Maps commit authors to Mattermost user names, so that notifications can @mention them.
+ * <p>
+ * An author's Jenkins user id and the local part of their email are looked up as Mattermost user names, with one
+ * lookup per change set, but a user found is only mentioned if their email equals the author's: the same name may
+ * belong to someone else. Authors without an email, or users whose email the bot may not see, are not mentioned.
+ * Results, including authors without a Mattermost account, are kept in a bounded LRU cache with a time-to-live, so
+ * busy controllers do not repeat lookups for every build.
+ */
+public final class MentionResolver {
+
+   private static final int MAX_CACHED = Integer.getInteger(MentionResolver.class.getName() + ".maxCached", 5000);
+   private static final long TTL_MINUTES = Long.getLong(MentionResolver.class.getName() + ".ttlMinutes", 60L);
+
+   private static final MentionResolver INSTANCE = new MentionResolver(new TtlCache<String, String>(MAX_CACHED,
+           TimeUnit.MINUTES.toMillis(TTL_MINUTES)));
+
+   /** cached for authors without a Mattermost account */
+   private static final String UNKNOWN = "";
+   private static final Pattern USERNAME = Pattern.compile("[a-z0-9._-]{1,64}");
+
+   private final TtlCache<String, String> usernames;
+
+   MentionResolver(TtlCache<String, String> usernames) {
+      this.usernames = usernames;
+   }
+
+   public static MentionResolver get() {
+      return INSTANCE;
+   }
+
+   /**
+    * @return the Mattermost user names of the authors that have an account
+    */
+   public Map<Author, String> resolve(RestMattermostService service, Collection<Author> authors) {
+      Map<Author, String> mentions = new HashMap<>();
+      String server = service.getEndpoints().getPrimary();
+      Map<Author, String> pending = new LinkedHashMap<>();
+      Set<String> candidates = new LinkedHashSet<>();
+      for (Author author : authors) {
+         if (author.getEmail() == null || pending.containsKey(author) || mentions.containsKey(author)) {
+            continue;
+         }
+         String key = server + ' ' + author.getKey();
+         String username = usernames.get(key);
+         if (username == null) {
+            pending.put(author, key);
+            addCandidate(candidates, author.getUsername());
+            addCandidate(candidates, author.getEmailLocalPart());
+         } else if (!username.equals(UNKNOWN)) {
+            mentions.put(author, username);
+         }
+      }
+      if (candidates.isEmpty()) {
+         return mentions;
+      }
+
+      JSONArray users = service.findUsersByUsernames(candidates);
+      if (users == null) {
+         // the lookup failed, try again with the next notification
+         return mentions;
+      }
+      NotificationTrace.mark("mentions", pending.size() + " authors, " + users.length() + " users");
+      for (Map.Entry<Author, String> entry : pending.entrySet()) {
+         String username = match(entry.getKey(), users);
+         usernames.put(entry.getValue(), username != null ? username : UNKNOWN);
+         if (username != null) {
+            mentions.put(entry.getKey(), username);
+         }
+      }
+      return mentions;
+   }
+
+   private static void addCandidate(Set<String> candidates, String username) {
+      if (username != null && USERNAME.matcher(username).matches()) {
+         candidates.add(username);
+      }
+   }
+
+   private static String match(Author author, JSONArray users) {
+      for (int i = 0; i < users.length(); i++) {
+         JSONObject user = users.optJSONObject(i);
+         String username = user != null ? user.optString("username", null) : null;
+         // emails are only returned to bots allowed to see them
+         if (username != null && author.getEmail().equalsIgnoreCase(user.optString("email"))) {
+            return username;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * The author of a change, as known to the SCM and Jenkins.
+    */
+   public static final class Author {
+
+      private final String username;
+      private final String email;
+
+      /**
+       * @param username the Jenkins user id of the author
+       * @param email    the email of the author if the SCM records it, otherwise {@code null}
+       */
+      public Author(String username, String email) {
+         this.username = normalize(username);
+         this.email = normalize(email);
+      }
+
+      private static String normalize(String value) {
+         return value == null || value.trim().isEmpty() ? null : value.trim().toLowerCase(Locale.ENGLISH);
+      }
+
+      public String getUsername() {
+         return username;
+      }
+
+      public String getEmail() {
+         return email;
+      }
+
+      String getEmailLocalPart() {
+         int at = email != null ? email.indexOf('@') : -1;
+         return at > 0 ? email.substring(0, at) : null;
+      }
+
+      String getKey() {
+         return email != null ? email : "@" + username;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (!(o instanceof Author)) {
+            return false;
+         }
+         Author other = (Author) o;
+         return getKey().equals(other.getKey());
+      }
+
+      @Override
+      public int hashCode() {
+         return getKey().hashCode();
+      }
+   }
+}
@@ -0,0 +1,86 @@
+package jenkins.plugins.mattermost;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers notifications in the background for callers that do not wait for the outcome.
+ * <p>
+ * The queue is bounded; when it is full new deliveries are rejected rather than piling up in memory.
+ */
+public class NotificationDispatcher {
+
+   private static final Logger logger = Logger.getLogger(NotificationDispatcher.class.getName());
+   private static final NotificationLogger log = new NotificationLogger(logger);
+
+   private static final int THREADS = Integer.getInteger(NotificationDispatcher.class.getName() + ".threads", 4);
+   private static final int QUEUE_CAPACITY = Integer.getInteger(NotificationDispatcher.class.getName() + ".queueCapacity", 1000);
+
+   private static final NotificationDispatcher INSTANCE = new NotificationDispatcher(THREADS, QUEUE_CAPACITY);
+
+   private final ThreadPoolExecutor executor;
+
+   NotificationDispatcher(int threads, int queueCapacity) {
+      executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+              new LinkedBlockingQueue<Runnable>(queueCapacity),
+              new NamingThreadFactory(new DaemonThreadFactory(), "Mattermost notification dispatcher"));
+      executor.allowCoreThreadTimeOut(true);
+   }
+
+   public static NotificationDispatcher get() {
+      return INSTANCE;
+   }
+
+   /**
+    * Queues a delivery.
+    *
+    * @return {@code false} if the queue is full and the delivery was dropped
+    */
+   public boolean submit(final Runnable delivery) {
+      // the caller's trace follows the delivery to the worker thread
+      final NotificationTrace trace = NotificationTrace.current();
+      if (trace != null) {
+         trace.retain();
+         trace.event("queued", "depth " + getQueueDepth());
+      }
+      try {
+         executor.execute(new Runnable() {
+            @Override
+            public void run() {
+               NotificationTrace previous = NotificationTrace.bind(trace);
+               try {
+                  NotificationTrace.mark("dequeued", null);
+                  delivery.run();
+               } catch (RuntimeException e) {
+                  logger.log(Level.WARNING, NotificationTrace.logPrefix() + "Error delivering Mattermost notification", e);
+               } finally {
+                  NotificationTrace.bind(previous);
+                  if (trace != null) {
+                     trace.release();
+                  }
+               }
+            }
+         });
+         return true;
+      } catch (RejectedExecutionException e) {
+         log.sampled(Level.WARNING, "queue-full", "Mattermost notification queue is full, dropping notification", null);
+         NotificationMetrics.get().recordDrop();
+         if (trace != null) {
+            trace.event("dropped", "queue full");
+            trace.release();
+         }
+         return false;
+      }
+   }
+
+   public int getQueueDepth() {
+      return executor.getQueue().size();
+   }
+}
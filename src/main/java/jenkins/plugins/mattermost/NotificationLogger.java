@@ -0,0 +1,108 @@
+package jenkins.plugins.mattermost;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logging for the notification path that stays cheap when a build storm sends thousands of posts.
+ * <p>
+ * Every post is summarized in one {@code FINE} line; payloads are only rendered at {@code FINEST} and are cut to
+ * {@code jenkins.plugins.mattermost.NotificationLogger.maxPayloadChars} characters. Repetitive warnings are sampled:
+ * the same kind of message is logged at most once per
+ * {@code jenkins.plugins.mattermost.NotificationLogger.sampleIntervalSeconds}, with the number of suppressed ones.
+ * Messages logged while a {@link NotificationTrace} is bound are prefixed with its id.
+ */
+public class NotificationLogger {
+
+   static final int MAX_PAYLOAD_CHARS = Integer.getInteger(NotificationLogger.class.getName() + ".maxPayloadChars", 1024);
+   static final long SAMPLE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(
+           Integer.getInteger(NotificationLogger.class.getName() + ".sampleIntervalSeconds", 60));
+
+   private final Logger logger;
+   private final long sampleInterval;
+   private final ConcurrentMap<String, Sample> samples = new ConcurrentHashMap<>();
+
+   public NotificationLogger(Logger logger) {
+      this(logger, SAMPLE_INTERVAL_MILLIS);
+   }
+
+   NotificationLogger(Logger logger, long sampleInterval) {
+      this.logger = logger;
+      this.sampleInterval = sampleInterval;
+   }
+
+   public boolean isLoggable(Level level) {
+      return logger.isLoggable(level);
+   }
+
+   /**
+    * Logs the outcome of one post without its body.
+    *
+    * @param target the channel and endpoint host, never the full webhook url
+    */
+   public void posted(String target, int status, long nanos, int payloadChars) {
+      if (logger.isLoggable(Level.FINE)) {
+         logger.log(Level.FINE, NotificationTrace.logPrefix() + "Posted to {0}: status {1}, {2} chars in {3} ms",
+                 new Object[]{target, status, payloadChars, LatencyHistogram.toMillis(nanos)});
+      }
+   }
+
+   /**
+    * Logs a payload, truncated; it is not even rendered unless {@code FINEST} is enabled.
+    */
+   public void payload(String target, Object payload) {
+      if (logger.isLoggable(Level.FINEST)) {
+         logger.log(Level.FINEST, NotificationTrace.logPrefix() + "Payload for {0}: {1}", new Object[]{target, truncate(String.valueOf(payload), MAX_PAYLOAD_CHARS)});
+      }
+   }
+
+   /**
+    * Logs a message unless one with the same key was logged during the sample interval, in which case it is only
+    * counted and the count is appended to the next one that gets through.
+    */
+   public void sampled(Level level, String key, String message, Throwable thrown) {
+      sampled(level, key, message, thrown, System.currentTimeMillis());
+   }
+
+   void sampled(Level level, String key, String message, Throwable thrown, long now) {
+      if (!logger.isLoggable(level)) {
+         return;
+      }
+      Sample sample = samples.get(key);
+      if (sample == null) {
+         Sample created = new Sample();
+         sample = samples.putIfAbsent(key, created);
+         if (sample == null) {
+            sample = created;
+         }
+      }
+      long next = sample.next.get();
+      if (now < next || !sample.next.compareAndSet(next, now + sampleInterval)) {
+         sample.suppressed.incrementAndGet();
+         return;
+      }
+      int suppressed = sample.suppressed.getAndSet(0);
+      String text = NotificationTrace.logPrefix() + truncate(message, MAX_PAYLOAD_CHARS);
+      if (suppressed > 0) {
+         text += " (" + suppressed + " similar messages suppressed)";
+      }
+      logger.log(level, text, thrown);
+   }
+
+   static String truncate(String text, int maxChars) {
+      if (text == null || text.length() <= maxChars) {
+         return text;
+      }
+      return text.substring(0, maxChars) + "... (" + (text.length() - maxChars) + " more chars)";
+   }
+
+   private static class Sample {
+      final AtomicLong next = new AtomicLong();
+      final AtomicInteger suppressed = new AtomicInteger();
+   }
+}
@@ -0,0 +1,242 @@
+package jenkins.plugins.mattermost;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms of the notifications sent by this Jenkins, per endpoint and channel.
+ * <p>
+ * Shown on the Mattermost management page and, when the Metrics plugin is installed, published through it.
+ * Endpoints are reduced to their scheme, host and port, so webhook tokens never show up.
+ */
+public class NotificationMetrics {
+
+   private static final NotificationMetrics INSTANCE = new NotificationMetrics();
+
+   private final LatencyHistogram renderTime = new LatencyHistogram();
+   private final AtomicLong drops = new AtomicLong();
+   private final ConcurrentMap<String, TargetMetrics> targets = new ConcurrentHashMap<>();
+
+   public static NotificationMetrics get() {
+      return INSTANCE;
+   }
+
+   public void recordRender(long nanos) {
+      renderTime.record(nanos);
+   }
+
+   /**
+    * A notification that was not sent at all, e.g. because the dispatcher queue was full.
+    */
+   public void recordDrop() {
+      drops.incrementAndGet();
+   }
+
+   public TargetMetrics target(String endpoint, String channel) {
+      return targetByLabel(endpointLabel(endpoint), channel);
+   }
+
+   public TargetMetrics target(DeliveryTarget target) {
+      return targetByLabel(target.getEndpointLabel(), target.getChannel());
+   }
+
+   private TargetMetrics targetByLabel(String label, String channel) {
+      String key = label + ' ' + channel;
+      TargetMetrics target = targets.get(key);
+      if (target == null) {
+         TargetMetrics created = new TargetMetrics(label, channel);
+         target = targets.putIfAbsent(key, created);
+         if (target == null) {
+            target = created;
+         }
+      }
+      return target;
+   }
+
+   public List<TargetMetrics> getTargets() {
+      List<TargetMetrics> result = new ArrayList<>(targets.values());
+      Collections.sort(result, new Comparator<TargetMetrics>() {
+         @Override
+         public int compare(TargetMetrics a, TargetMetrics b) {
+            int byEndpoint = a.endpoint.compareTo(b.endpoint);
+            return byEndpoint != 0 ? byEndpoint : a.channel.compareTo(b.channel);
+         }
+      });
+      return result;
+   }
+
+   public LatencyHistogram getRenderTime() {
+      return renderTime;
+   }
+
+   public long getDrops() {
+      return drops.get();
+   }
+
+   public int getQueueDepth() {
+      return NotificationDispatcher.get().getQueueDepth();
+   }
+
+   public long getSuccesses() {
+      long total = 0;
+      for (TargetMetrics target : targets.values()) {
+         total += target.getSuccesses();
+      }
+      return total;
+   }
+
+   public long getFailures() {
+      long total = 0;
+      for (TargetMetrics target : targets.values()) {
+         total += target.getFailures();
+      }
+      return total;
+   }
+
+   public long getRetries() {
+      long total = 0;
+      for (TargetMetrics target : targets.values()) {
+         total += target.getRetries();
+      }
+      return total;
+   }
+
+   public long getDuplicates() {
+      long total = 0;
+      for (TargetMetrics target : targets.values()) {
+         total += target.getDuplicates();
+      }
+      return total;
+   }
+
+   static String endpointLabel(String endpoint) {
+      if (StringUtils.isEmpty(endpoint)) {
+         return "(none)";
+      }
+      try {
+         URL url = new URL(endpoint);
+         return url.getProtocol() + "://" + url.getHost() + (url.getPort() != -1 ? ":" + url.getPort() : "");
+      } catch (MalformedURLException e) {
+         return "(invalid)";
+      }
+   }
+
+   /**
+    * Metrics of one channel on one endpoint.
+    */
+   public static class TargetMetrics {
+
+      private final String endpoint;
+      private final String channel;
+      private final LatencyHistogram latency = new LatencyHistogram();
+      private final AtomicLong successes = new AtomicLong();
+      private final AtomicLong failures = new AtomicLong();
+      private final AtomicLong retries = new AtomicLong();
+      private final AtomicLong duplicates = new AtomicLong();
+      private final AtomicInteger inFlight = new AtomicInteger();
+      private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<>();
+
+      TargetMetrics(String endpoint, String channel) {
+         this.endpoint = endpoint;
+         this.channel = StringUtils.isEmpty(channel) ? "(default)" : channel;
+      }
+
+      /**
+       * Marks the start of an HTTP request.
+       *
+       * @return the start time to pass to {@link #recordResponse} or {@link #recordError}
+       */
+      public long begin() {
+         inFlight.incrementAndGet();
+         return System.nanoTime();
+      }
+
+      public void recordResponse(long start, int status) {
+         inFlight.decrementAndGet();
+         latency.record(System.nanoTime() - start);
+         AtomicLong counter = statusCodes.get(status);
+         if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = statusCodes.putIfAbsent(status, created);
+            if (counter == null) {
+               counter = created;
+            }
+         }
+         counter.incrementAndGet();
+         if (status >= 200 && status < 300) {
+            successes.incrementAndGet();
+         } else {
+            failures.incrementAndGet();
+         }
+      }
+
+      /**
+       * A request that failed without an HTTP response, e.g. a connection error.
+       */
+      public void recordError(long start) {
+         inFlight.decrementAndGet();
+         latency.record(System.nanoTime() - start);
+         failures.incrementAndGet();
+      }
+
+      public void recordRetry() {
+         retries.incrementAndGet();
+      }
+
+      public void recordDuplicate() {
+         duplicates.incrementAndGet();
+      }
+
+      public String getEndpoint() {
+         return endpoint;
+      }
+
+      public String getChannel() {
+         return channel;
+      }
+
+      public LatencyHistogram getLatency() {
+         return latency;
+      }
+
+      public long getSuccesses() {
+         return successes.get();
+      }
+
+      public long getFailures() {
+         return failures.get();
+      }
+
+      public long getRetries() {
+         return retries.get();
+      }
+
+      public long getDuplicates() {
+         return duplicates.get();
+      }
+
+      public int getInFlight() {
+         return inFlight.get();
+      }
+
+      public Map<Integer, Long> getStatusCodes() {
+         Map<Integer, Long> result = new TreeMap<>();
+         for (Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+         }
+         return result;
+      }
+   }
+}
@@ -0,0 +1,203 @@
+package jenkins.plugins.mattermost;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional breakdown of where the time of one notification went: environment, change sets, rendering and HTTP.
+ * <p>
+ * A timing is bound to the notifying thread between {@link #start()} and {@link #finish}; the static
+ * {@link #begin()}/{@link #end(String)} pairs in between are no-ops when no timing is running. Nested phases are
+ * subtracted from the enclosing one, so the phases add up to the total. Finished timings are also aggregated per
+ * job for the Mattermost management page.
+ */
+public final class NotificationTiming {
+
+   private static final int MAX_JOBS = Integer.getInteger(NotificationTiming.class.getName() + ".maxJobs", 500);
+
+   private static final ThreadLocal<NotificationTiming> CURRENT = new ThreadLocal<>();
+   private static final ConcurrentMap<String, JobTimings> JOBS = new ConcurrentHashMap<>();
+
+   private final long started = System.nanoTime();
+   private final Map<String, Long> phases = new LinkedHashMap<>();
+   /** Open phases as {start, nanos spent in nested phases}. */
+   private final Deque<long[]> open = new ArrayDeque<>();
+
+   private NotificationTiming() {
+   }
+
+   /**
+    * Starts timing the current thread's notification.
+    */
+   public static NotificationTiming start() {
+      NotificationTiming timing = new NotificationTiming();
+      CURRENT.set(timing);
+      return timing;
+   }
+
+   public static void begin() {
+      NotificationTiming timing = CURRENT.get();
+      if (timing != null) {
+         timing.open.push(new long[]{System.nanoTime(), 0});
+      }
+   }
+
+   public static void end(String phase) {
+      NotificationTiming timing = CURRENT.get();
+      if (timing == null || timing.open.isEmpty()) {
+         return;
+      }
+      long[] frame = timing.open.pop();
+      long elapsed = System.nanoTime() - frame[0];
+      timing.add(phase, elapsed - frame[1]);
+      if (!timing.open.isEmpty()) {
+         timing.open.peek()[1] += elapsed;
+      }
+   }
+
+   private void add(String phase, long nanos) {
+      Long previous = phases.get(phase);
+      phases.put(phase, previous != null ? previous + nanos : nanos);
+   }
+
+   /**
+    * Stops timing, prints the breakdown and adds it to the job's aggregates.
+    *
+    * @param event e.g. {@code started} or {@code completed}
+    */
+   public void finish(String jobName, String event, PrintStream logger) {
+      CURRENT.remove();
+      long total = System.nanoTime() - started;
+      long accounted = 0;
+      for (long nanos : phases.values()) {
+         accounted += nanos;
+      }
+      add("other", Math.max(0, total - accounted));
+      if (logger != null) {
+         logger.println(toString(event, total));
+      }
+      aggregate(jobName, total);
+   }
+
+   String toString(String event, long total) {
+      StringBuilder line = new StringBuilder("Mattermost ").append(event).append(" notification took ")
+              .append(LatencyHistogram.toMillis(total)).append(" ms (");
+      boolean first = true;
+      for (Map.Entry<String, Long> phase : phases.entrySet()) {
+         if (!first) {
+            line.append(", ");
+         }
+         first = false;
+         line.append(phase.getKey()).append(' ').append(LatencyHistogram.toMillis(phase.getValue())).append(" ms");
+      }
+      return line.append(')').toString();
+   }
+
+   Map<String, Long> getPhases() {
+      return phases;
+   }
+
+   private void aggregate(String jobName, long total) {
+      JobTimings job = JOBS.get(jobName);
+      if (job == null) {
+         if (JOBS.size() >= MAX_JOBS) {
+            return;
+         }
+         JobTimings created = new JobTimings(jobName);
+         job = JOBS.putIfAbsent(jobName, created);
+         if (job == null) {
+            job = created;
+         }
+      }
+      job.phase("total").record(total);
+      for (Map.Entry<String, Long> phase : phases.entrySet()) {
+         job.phase(phase.getKey()).record(phase.getValue());
+      }
+   }
+
+   public static List<JobTimings> getJobs() {
+      List<JobTimings> jobs = new ArrayList<>(JOBS.values());
+      Collections.sort(jobs);
+      return jobs;
+   }
+
+   /**
+    * Aggregated phase durations of the notifications of one job.
+    */
+   public static class JobTimings implements Comparable<JobTimings> {
+
+      private final String name;
+      private final ConcurrentMap<String, PhaseStats> phases = new ConcurrentHashMap<>();
+
+      JobTimings(String name) {
+         this.name = name;
+      }
+
+      PhaseStats phase(String phase) {
+         PhaseStats stats = phases.get(phase);
+         if (stats == null) {
+            PhaseStats created = new PhaseStats();
+            stats = phases.putIfAbsent(phase, created);
+            if (stats == null) {
+               stats = created;
+            }
+         }
+         return stats;
+      }
+
+      public String getName() {
+         return name;
+      }
+
+      public Map<String, PhaseStats> getPhases() {
+         return new TreeMap<>(phases);
+      }
+
+      @Override
+      public int compareTo(JobTimings other) {
+         return name.compareTo(other.name);
+      }
+   }
+
+   /**
+    * Count, mean and maximum of one phase.
+    */
+   public static class PhaseStats {
+
+      private final AtomicLong count = new AtomicLong();
+      private final AtomicLong total = new AtomicLong();
+      private final AtomicLong max = new AtomicLong();
+
+      void record(long nanos) {
+         count.incrementAndGet();
+         total.addAndGet(nanos);
+         long currentMax;
+         while (nanos > (currentMax = max.get()) && !max.compareAndSet(currentMax, nanos)) {
+            // retry
+         }
+      }
+
+      public long getCount() {
+         return count.get();
+      }
+
+      public String getMeanMillis() {
+         long n = count.get();
+         return LatencyHistogram.toMillis(n == 0 ? 0 : total.get() / n);
+      }
+
+      public String getMaxMillis() {
+         return LatencyHistogram.toMillis(max.get());
+      }
+   }
+}
@@ -0,0 +1,218 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Follows one notification from the listener or pipeline step that created it, through rendering, queueing,
+ * retries and HTTP, under a single id that is also put in front of the notification's log lines.
+ * <p>
+ * The trace is bound to the current thread; {@link NotificationDispatcher} carries it over to its worker threads.
+ * Completed traces are kept in a ring buffer of {@code jenkins.plugins.mattermost.NotificationTrace.capacity}
+ * entries, downloadable as JSON from the Mattermost management page.
+ */
+public final class NotificationTrace {
+
+   private static final int CAPACITY = Math.max(1, Integer.getInteger(NotificationTrace.class.getName() + ".capacity", 256));
+   private static final int MAX_EVENTS = 100;
+
+   private static final ThreadLocal<NotificationTrace> CURRENT = new ThreadLocal<>();
+   private static final NotificationTrace[] COMPLETED = new NotificationTrace[CAPACITY];
+   private static int next;
+
+   private final String id;
+   private final String source;
+   private final String subject;
+   private final long startMillis = System.currentTimeMillis();
+   private final long startNanos = System.nanoTime();
+   private final List<Event> events = new ArrayList<>();
+   /** The creating scope plus every queued delivery that still has to run. */
+   private final AtomicInteger pending = new AtomicInteger(1);
+   private volatile long durationNanos = -1;
+   private volatile boolean attempted;
+   private volatile boolean failed;
+   private final long watchdogId = DeliveryWatchdog.get().opened(startNanos);
+
+   private NotificationTrace(String source, String subject) {
+      this.id = String.format("%016x", ThreadLocalRandom.current().nextLong());
+      this.source = source;
+      this.subject = subject;
+   }
+
+   /**
+    * Starts a trace and binds it to the current thread until {@link #close()}.
+    *
+    * @param source  what created the notification, e.g. {@code listener} or {@code step}
+    * @param subject what the notification is about, e.g. the job and build
+    */
+   public static NotificationTrace start(String source, String subject) {
+      NotificationTrace trace = new NotificationTrace(source, subject);
+      CURRENT.set(trace);
+      return trace;
+   }
+
+   public static NotificationTrace current() {
+      return CURRENT.get();
+   }
+
+   /**
+    * Binds the given trace to the current thread.
+    *
+    * @return the previously bound trace, to restore afterwards
+    */
+   static NotificationTrace bind(NotificationTrace trace) {
+      NotificationTrace previous = CURRENT.get();
+      if (trace != null) {
+         CURRENT.set(trace);
+      } else {
+         CURRENT.remove();
+      }
+      return previous;
+   }
+
+   /**
+    * Adds an event to the current thread's trace, if any.
+    */
+   public static void mark(String name, String detail) {
+      NotificationTrace trace = CURRENT.get();
+      if (trace != null) {
+         trace.event(name, detail);
+      }
+   }
+
+   /**
+    * Records the outcome of a post of the current thread's trace, if any. Traces without posts, e.g. of builds whose
+    * result is not notified, do not count towards the delivery lag.
+    */
+   static void delivery(boolean success) {
+      NotificationTrace trace = CURRENT.get();
+      if (trace != null) {
+         trace.attempted = true;
+         if (!success) {
+            trace.failed = true;
+         }
+      }
+   }
+
+   /**
+    * @return {@code "[trace <id>] "} when a trace is bound to the current thread, an empty string otherwise
+    */
+   static String logPrefix() {
+      NotificationTrace trace = CURRENT.get();
+      return trace != null ? "[trace " + trace.id + "] " : "";
+   }
+
+   public synchronized void event(String name, String detail) {
+      if (events.size() < MAX_EVENTS) {
+         events.add(new Event(name, System.nanoTime() - startNanos, detail));
+      }
+   }
+
+   /**
+    * Keeps the trace open for a delivery handed to another thread.
+    */
+   void retain() {
+      pending.incrementAndGet();
+   }
+
+   /**
+    * Completes the trace once the creating scope and all deliveries handed off from it are done.
+    */
+   void release() {
+      if (pending.decrementAndGet() == 0) {
+         durationNanos = System.nanoTime() - startNanos;
+         if (!attempted) {
+            DeliveryWatchdog.get().discarded(watchdogId);
+         } else if (failed) {
+            DeliveryWatchdog.get().failed(watchdogId);
+         } else {
+            DeliveryWatchdog.get().delivered(watchdogId, durationNanos);
+         }
+         synchronized (COMPLETED) {
+            COMPLETED[next] = this;
+            next = (next + 1) % CAPACITY;
+         }
+      }
+   }
+
+   /**
+    * Ends the creating scope and unbinds the trace from the current thread.
+    */
+   public void close() {
+      if (CURRENT.get() == this) {
+         CURRENT.remove();
+      }
+      release();
+   }
+
+   public String getId() {
+      return id;
+   }
+
+   public static int getCapacity() {
+      return CAPACITY;
+   }
+
+   /**
+    * @return the completed traces, oldest first
+    */
+   public static List<NotificationTrace> getCompleted() {
+      List<NotificationTrace> traces = new ArrayList<>(CAPACITY);
+      synchronized (COMPLETED) {
+         for (int i = 0; i < CAPACITY; i++) {
+            NotificationTrace trace = COMPLETED[(next + i) % CAPACITY];
+            if (trace != null) {
+               traces.add(trace);
+            }
+         }
+      }
+      return traces;
+   }
+
+   public static JSONArray getCompletedAsJSON() {
+      JSONArray traces = new JSONArray();
+      for (NotificationTrace trace : getCompleted()) {
+         traces.put(trace.toJSON());
+      }
+      return traces;
+   }
+
+   synchronized JSONObject toJSON() {
+      JSONObject json = new JSONObject();
+      json.put("id", id);
+      json.put("source", source);
+      json.put("subject", subject);
+      json.put("start", startMillis);
+      json.put("durationMicros", TimeUnit.NANOSECONDS.toMicros(durationNanos));
+      JSONArray eventsJson = new JSONArray();
+      for (Event event : events) {
+         JSONObject eventJson = new JSONObject();
+         eventJson.put("name", event.name);
+         eventJson.put("atMicros", TimeUnit.NANOSECONDS.toMicros(event.offsetNanos));
+         if (event.detail != null) {
+            eventJson.put("detail", event.detail);
+         }
+         eventsJson.put(eventJson);
+      }
+      json.put("events", eventsJson);
+      return json;
+   }
+
+   private static class Event {
+      final String name;
+      final long offsetNanos;
+      final String detail;
+
+      Event(String name, long offsetNanos, String detail) {
+         this.name = name;
+         this.offsetNanos = offsetNanos;
+         this.detail = detail;
+      }
+   }
+}
@@ -0,0 +1,211 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps notification payloads below the request size Mattermost accepts ({@code MaximumPayloadSize}, 300000 bytes by
+ * default), splitting oversized messages into continuation posts instead of sending a request that is rejected.
+ * Posts through the REST API also limit the message, the top-level text, to {@value #DEFAULT_MAX_MESSAGE_RUNES}
+ * characters; payloads are split on both limits, so every part can be sent through either transport.
+ * <p>
+ * Sizes are measured as the payload is sent to webhooks: JSON-escaped and form-encoded, which is the largest of the
+ * encodings used. The text of the first attachment, e.g. the commit list, is split at line breaks over several posts;
+ * field values too large to share a post are truncated.
+ */
+public final class PayloadSplitter {
+
+   public static final int MAX_PAYLOAD_BYTES = Integer.getInteger(PayloadSplitter.class.getName() + ".maxPayloadBytes", 300000);
+
+   static final int DEFAULT_MAX_MESSAGE_RUNES = 16383;
+   public static final int MAX_MESSAGE_RUNES = Integer.getInteger(PayloadSplitter.class.getName() + ".maxMessageRunes",
+           DEFAULT_MAX_MESSAGE_RUNES);
+
+   /** room for the channel, user name and icon added when sending, and the form parameter name */
+   private static final int SEND_OVERHEAD_BYTES = 1024;
+   /** room for the text key and continuation marker */
+   private static final int TEXT_OVERHEAD_BYTES = 256;
+
+   static final String TRUNCATED = "\n*...truncated, too long for one post.*";
+
+   private PayloadSplitter() {
+   }
+
+   /**
+    * @return the payload itself if it fits into one post, otherwise the first post followed by continuation posts
+    */
+   public static List<JSONObject> split(JSONObject json) {
+      return split(json, MAX_PAYLOAD_BYTES);
+   }
+
+   static List<JSONObject> split(JSONObject json, int maxPayloadBytes) {
+      return split(json, maxPayloadBytes, MAX_MESSAGE_RUNES);
+   }
+
+   static List<JSONObject> split(JSONObject json, int maxPayloadBytes, int maxMessageRunes) {
+      int limit = Math.max(maxPayloadBytes - SEND_OVERHEAD_BYTES, 2 * TEXT_OVERHEAD_BYTES);
+      int maxRunes = Math.max(maxMessageRunes, 2 * TRUNCATED.length());
+      String message = json.optString("text", "");
+      boolean messageFits = message.codePointCount(0, message.length()) <= maxRunes;
+      if (messageFits && encodedSize(json.toString()) <= limit) {
+         return Collections.singletonList(json);
+      }
+
+      JSONArray attachments = json.optJSONArray("attachments");
+      JSONObject container = attachments != null && attachments.length() > 0 && attachments.optJSONObject(0) != null
+              ? attachments.getJSONObject(0) : json;
+      if (container != json && !messageFits) {
+         // the attachment text is split, a message next to it is short, e.g. mentions, and only truncated
+         int end = prefixLength(message, 0, Integer.MAX_VALUE, maxRunes - TRUNCATED.length());
+         json.put("text", message.substring(0, end) + TRUNCATED);
+      }
+      String text = container.optString("text", "");
+      container.remove("text");
+      truncateFields(container.optJSONArray("fields"), limit / 2);
+
+      int firstBudget = limit - encodedSize(json.toString()) - TEXT_OVERHEAD_BYTES;
+      int budget = limit - TEXT_OVERHEAD_BYTES;
+      List<String> chunks = chunk(text, Math.max(firstBudget, 0), budget,
+              container == json ? maxRunes : Integer.MAX_VALUE);
+
+      List<JSONObject> parts = new ArrayList<>(chunks.size());
+      if (!chunks.get(0).isEmpty()) {
+         container.put("text", chunks.get(0));
+      }
+      parts.add(json);
+      for (int i = 1; i < chunks.size(); i++) {
+         parts.add(continuation(json, container, chunks.get(i), i + 1, chunks.size()));
+      }
+      return parts;
+   }
+
+   private static JSONObject continuation(JSONObject json, JSONObject container, String text, int part, int parts) {
+      JSONObject continuation = new JSONObject();
+      if (container == json) {
+         continuation.put("text", text);
+         return continuation;
+      }
+      JSONObject attachment = new JSONObject();
+      attachment.put("pretext", "(continued " + part + "/" + parts + ")");
+      attachment.put("text", text);
+      if (container.has("color")) {
+         attachment.put("color", container.get("color"));
+      }
+      continuation.put("attachments", new JSONArray().put(attachment));
+      return continuation;
+   }
+
+   /**
+    * Shortens field values so that all fields together stay within the budget.
+    */
+   private static void truncateFields(JSONArray fields, int budget) {
+      if (fields == null || fields.length() == 0) {
+         return;
+      }
+      int fieldBudget = budget / fields.length() - TEXT_OVERHEAD_BYTES;
+      for (int i = 0; i < fields.length(); i++) {
+         JSONObject field = fields.optJSONObject(i);
+         String value = field != null ? field.optString("value", null) : null;
+         if (value != null && encodedSize(value) > fieldBudget) {
+            int end = prefixLength(value, 0, Math.max(fieldBudget - encodedSize(TRUNCATED), 0), Integer.MAX_VALUE);
+            field.put("value", value.substring(0, end) + TRUNCATED);
+         }
+      }
+   }
+
+   /**
+    * Splits the text at line breaks into chunks within the budgets and of at most {@code maxRunes} characters,
+    * breaking lines only if a single line is too long.
+    */
+   static List<String> chunk(String text, int firstBudget, int budget, int maxRunes) {
+      List<String> chunks = new ArrayList<>();
+      int start = 0;
+      int chunkBudget = firstBudget;
+      while (start < text.length()) {
+         int end = prefixLength(text, start, chunkBudget, maxRunes);
+         if (end < text.length()) {
+            int lineBreak = text.lastIndexOf('\n', end - 1);
+            if (lineBreak >= start) {
+               end = lineBreak + 1;
+            } else if (end == start && chunks.isEmpty()) {
+               // nothing fits next to the first post's fields, the text starts with the first continuation
+               chunks.add("");
+               chunkBudget = budget;
+               continue;
+            }
+         }
+         end = Math.max(end, start + 1);
+         chunks.add(text.substring(start, end));
+         start = end;
+         chunkBudget = budget;
+      }
+      if (chunks.isEmpty()) {
+         chunks.add("");
+      }
+      return chunks;
+   }
+
+   /**
+    * @return the end index of the longest part of the text starting at {@code start} within the budget and of at most
+    *         {@code maxRunes} characters, counting a surrogate pair as one
+    */
+   private static int prefixLength(String text, int start, int budget, int maxRunes) {
+      int size = 0;
+      int runes = 0;
+      int i = start;
+      while (i < text.length()) {
+         char c = text.charAt(i);
+         size += encodedSize(c);
+         if (!Character.isLowSurrogate(c)) {
+            runes++;
+         }
+         if (size > budget || runes > maxRunes) {
+            break;
+         }
+         i++;
+      }
+      // do not separate a surrogate pair
+      if (i > start && i < text.length() && Character.isHighSurrogate(text.charAt(i - 1))) {
+         i--;
+      }
+      return i;
+   }
+
+   /**
+    * @return the size of the text once JSON-escaped, UTF-8 encoded and form-encoded
+    */
+   public static int encodedSize(String text) {
+      int size = 0;
+      for (int i = 0; i < text.length(); i++) {
+         size += encodedSize(text.charAt(i));
+      }
+      return size;
+   }
+
+   private static int encodedSize(char c) {
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+              || c == '.' || c == '-' || c == '*' || c == '_' || c == ' ') {
+         return 1;
+      }
+      if (c == '"' || c == '\\' || c == '/') {
+         // escaped with a backslash, slashes only after '<' but counted always
+         return 6;
+      }
+      if (c == '\b' || c == '\f' || c == '\n' || c == '\r' || c == '\t') {
+         return 4;
+      }
+      if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+         // escaped as backslash u plus four hex digits
+         return 8;
+      }
+      if (c < 0x80) {
+         return 3;
+      }
+      // two or three UTF-8 bytes, four for a surrogate pair, each byte percent-encoded
+      return c < 0x800 || Character.isSurrogate(c) ? 6 : 9;
+   }
+}
@@ -0,0 +1,102 @@
+package jenkins.plugins.mattermost;
+
+import hudson.ProxyConfiguration;
+import jenkins.model.Jenkins;
+import org.apache.http.Consts;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts to incoming webhooks with Apache HttpClient 4.5 instead of commons-httpclient 3.1.
+ * <p>
+ * All services share one client whose connection pool keeps connections alive between posts, revalidates them after
+ * a period of inactivity instead of before every request, and retires them after a time-to-live so that DNS changes
+ * of the Mattermost host are picked up. Unlike commons-httpclient it sends SNI, which TLS ingresses serving several
+ * host names need. Connect, socket and pool timeouts are the same as for commons-httpclient.
+ */
+public class PooledMattermostService extends StandardMattermostService {
+
+   private static final int MAX_CONNECTIONS_PER_HOST = Integer.getInteger(PooledMattermostService.class.getName() + ".maxConnectionsPerHost", 20);
+   private static final int MAX_TOTAL_CONNECTIONS = Integer.getInteger(PooledMattermostService.class.getName() + ".maxTotalConnections", 100);
+   private static final long CONNECTION_TTL_SECONDS = Long.getLong(PooledMattermostService.class.getName() + ".connectionTtlSeconds", 300L);
+   private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = Integer.getInteger(PooledMattermostService.class.getName() + ".validateAfterInactivityMillis", 2000);
+
+   private static final RequestConfig REQUEST_CONFIG = RequestConfig.custom()
+           .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+           .setSocketTimeout(SOCKET_TIMEOUT_MILLIS)
+           .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MILLIS)
+           .build();
+
+   private static final CloseableHttpClient CLIENT;
+
+   static {
+      PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(CONNECTION_TTL_SECONDS, TimeUnit.SECONDS);
+      connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+      connectionManager.setMaxTotal(MAX_TOTAL_CONNECTIONS);
+      connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+      CLIENT = HttpClients.custom()
+              .setConnectionManager(connectionManager)
+              .setDefaultRequestConfig(REQUEST_CONFIG)
+              .disableCookieManagement()
+              .build();
+   }
+
+   public PooledMattermostService(String endpoint, String roomId, String icon) {
+      super(endpoint, roomId, icon);
+   }
+
+   @Override
+   protected PostResult postPayload(String url, String payload, byte[] compressed) throws IOException {
+      HttpPost post = new HttpPost(url);
+      HttpClientContext context = HttpClientContext.create();
+      configureProxy(post, context);
+      if (compressed != null) {
+         post.setEntity(new ByteArrayEntity(compressed, ContentType.APPLICATION_JSON));
+         post.setHeader("Content-Encoding", "gzip");
+      } else {
+         post.setEntity(new UrlEncodedFormEntity(Collections.singletonList(new BasicNameValuePair("payload", payload)), Consts.UTF_8));
+      }
+      try (CloseableHttpResponse response = CLIENT.execute(post, context)) {
+         // reading the entity to the end gives the connection back to the pool
+         HttpEntity entity = response.getEntity();
+         String body = entity != null ? EntityUtils.toString(entity, Consts.UTF_8) : "";
+         return new PostResult(response.getStatusLine().getStatusCode(), body);
+      }
+   }
+
+   private void configureProxy(HttpPost post, HttpClientContext context) {
+      Jenkins jenkins = Jenkins.getInstance();
+      ProxyConfiguration proxy = jenkins != null ? jenkins.proxy : null;
+      if (proxy == null || !isProxyRequired(post.getURI().toString(), proxy.getNoProxyHostPatterns())) {
+         return;
+      }
+      // a request config replaces the client's default one, so it starts from the same timeouts
+      post.setConfig(RequestConfig.copy(REQUEST_CONFIG).setProxy(new HttpHost(proxy.name, proxy.port)).build());
+      String username = proxy.getUserName();
+      if (username != null && !"".equals(username.trim())) {
+         CredentialsProvider credentials = new BasicCredentialsProvider();
+         credentials.setCredentials(new AuthScope(proxy.name, proxy.port), new UsernamePasswordCredentials(username, proxy.getPassword()));
+         context.setCredentialsProvider(credentials);
+      }
+   }
+}
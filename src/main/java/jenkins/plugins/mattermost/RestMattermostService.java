@@ -0,0 +1,407 @@
+package jenkins.plugins.mattermost;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.lang.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Posts through the Mattermost REST API v4 with a bot access token instead of an incoming webhook.
+ * <p>
+ * Unlike webhooks the API returns the id of every created post, which allows editing the post later on.
+ * Rooms are given as {@code team/channel}, as a plain channel name of the bot's first team, or as a channel id.
+ * Channel names are resolved to ids once and cached, so that a post is a single request on a pooled keep-alive
+ * connection.
+ */
+public class RestMattermostService extends StandardMattermostService implements UpdatableMattermostService {
+
+   private static final Logger logger = Logger.getLogger(RestMattermostService.class.getName());
+   private static final NotificationLogger log = new NotificationLogger(logger);
+
+   private static final Pattern CHANNEL_ID = Pattern.compile("[a-z0-9]{26}");
+   private static final String HOOKS_PATH = "/hooks/";
+
+   private static final TtlCache<String, String> CHANNEL_IDS = new TtlCache<>(
+           Integer.getInteger(RestMattermostService.class.getName() + ".maxCachedChannelIds", 1000),
+           TimeUnit.MINUTES.toMillis(Long.getLong(RestMattermostService.class.getName() + ".channelIdTtlMinutes", 60L)));
+
+   private final ShardPool botTokens;
+   private TtlCache<String, String> channelIds = CHANNEL_IDS;
+
+   /**
+    * @param botToken the access token of the bot, or several equivalent tokens separated by {@code |}; channels
+    *                 are spread over them by {@link ShardPool}
+    */
+   public RestMattermostService(String endpoint, String roomId, String icon, String botToken) {
+      super(endpoint, roomId, icon);
+      this.botTokens = ShardPool.parse(botToken);
+   }
+
+   void setChannelIdCache(TtlCache<String, String> channelIds) {
+      this.channelIds = channelIds;
+   }
+
+   /**
+    * The REST API lives on the same server as the incoming webhooks, so a webhook url can be used as endpoint.
+    */
+   static String getApiUrl(String endpoint) {
+      String apiUrl = endpoint;
+      int hooks = apiUrl.indexOf(HOOKS_PATH);
+      if (hooks >= 0) {
+         apiUrl = apiUrl.substring(0, hooks);
+      }
+      return StringUtils.removeEnd(apiUrl, "/") + "/api/v4";
+   }
+
+   @Override
+   public boolean publish(final JSONObject json, final String color, final String eventKey) {
+      return publishOrUpdate(new LinkedHashMap<String, String>(), json, color, eventKey);
+   }
+
+   @Override
+   public Map<String, String> publishForUpdate(JSONObject json, String color, String eventKey) {
+      Map<String, String> postIds = new LinkedHashMap<>();
+      for (DeliveryTarget target : getTargets()) {
+         String postId = send(target, null, null, json, eventKey);
+         if (!StringUtils.isEmpty(postId)) {
+            postIds.put(target.getRaw(), postId);
+         }
+      }
+      return postIds;
+   }
+
+   @Override
+   public boolean publishOrUpdate(Map<String, String> postIds, JSONObject json, String color, String eventKey) {
+      boolean result = true;
+      for (DeliveryTarget target : getTargets()) {
+         String postId = StringUtils.trimToNull(postIds.get(target.getRaw()));
+         if (send(target, postId, null, json, eventKey) == null) {
+            result = false;
+         }
+      }
+      return result;
+   }
+
+   @Override
+   public boolean publishReply(Map<String, String> rootPostIds, JSONObject json, String color) {
+      boolean result = true;
+      for (DeliveryTarget target : getTargets()) {
+         String rootId = StringUtils.trimToNull(rootPostIds.get(target.getRaw()));
+         if (send(target, null, rootId, json, null) == null) {
+            result = false;
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return the id of the created or updated post, an empty string for a skipped duplicate, {@code null} on failure
+    */
+   private String send(DeliveryTarget target, String postId, String rootId, JSONObject json, String eventKey) {
+      String userId = target.getUser();
+      String roomId = target.getChannel();
+      if (roomId.isEmpty()) {
+         logger.warning("A channel is required to post through the Mattermost API, skipping " + target.getRaw());
+         return null;
+      }
+
+      // edits are idempotent, only new posts have to be guarded against duplicates
+      String deliveryKey = null;
+      if (postId == null && eventKey != null) {
+         deliveryKey = IdempotencyKey.forTarget(eventKey, getEndpoints().getPrimary(), target.getRaw());
+         DeliveryDedupStore.Claim claim = getDedupStore().claim(deliveryKey);
+         if (claim == DeliveryDedupStore.Claim.DUPLICATE) {
+            if (logger.isLoggable(Level.FINE)) {
+               logger.fine("Skipping duplicate post to " + roomId + " for " + eventKey);
+            }
+            NotificationMetrics.get().target(target).recordDuplicate();
+            NotificationTrace.mark("duplicate", roomId);
+            return "";
+         }
+         if (claim == DeliveryDedupStore.Claim.RETRY) {
+            NotificationMetrics.get().target(target).recordRetry();
+            NotificationTrace.mark("retry", roomId);
+         }
+      }
+
+      JSONObject props = new JSONObject();
+      if (json.has("attachments")) {
+         props.put("attachments", json.get("attachments"));
+      }
+      props.put("override_username", userId);
+      if (!StringUtils.isEmpty(getIcon())) {
+         props.put("override_icon_url", getIcon());
+      }
+      JSONObject post = new JSONObject();
+      post.put("message", json.optString("text", ""));
+      post.put("props", props);
+
+      // one channel always posts with the same token, so its posts stay in order
+      String botToken = botTokens.select(roomId);
+      EndpointList endpoints = getEndpoints();
+      int[] order = endpoints.order();
+      for (int attempt = 0; attempt < order.length; attempt++) {
+         String endpoint = endpoints.get(order[attempt]);
+         ApiResponse response = sendTo(endpoint, botToken, roomId, postId, rootId, post);
+         if (response.json != null) {
+            NotificationTrace.delivery(true);
+            return response.json.optString("id", postId != null ? postId : "");
+         }
+         // only fail over when the post certainly did not reach Mattermost, not when the server refused it
+         if (attempt + 1 < order.length && response.failure == Failure.UNREACHABLE) {
+            NotificationTrace.mark("failover", roomId + "@" + NotificationMetrics.endpointLabel(endpoint));
+            continue;
+         }
+         if (response.failure != Failure.UNCERTAIN) {
+            release(deliveryKey);
+         }
+         break;
+      }
+      NotificationTrace.delivery(false);
+      return null;
+   }
+
+   private ApiResponse sendTo(String endpoint, String botToken, String roomId, String postId, String rootId, JSONObject post) {
+      NotificationMetrics.TargetMetrics metrics = NotificationMetrics.get().target(endpoint, roomId);
+      String apiUrl = getApiUrl(ShardPool.parse(endpoint).select(roomId));
+      if (postId != null) {
+         if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Updating post " + postId + " in " + roomId + "@" + apiUrl);
+         }
+         log.payload(roomId, post);
+         return call(endpoint, botToken, new PutMethod(apiUrl + "/posts/" + postId + "/patch"), post, metrics);
+      }
+      String channelId = resolveChannelId(endpoint, botToken, roomId);
+      if (channelId == null) {
+         logger.warning("Could not resolve Mattermost channel " + roomId);
+         // nothing was posted yet, another endpoint may still resolve it
+         return EndpointHealth.get().isReachable(endpoint) ? ApiResponse.REFUSED : ApiResponse.UNREACHABLE;
+      }
+      post.put("channel_id", channelId);
+      if (rootId != null) {
+         post.put("root_id", rootId);
+      }
+      if (logger.isLoggable(Level.FINE)) {
+         logger.fine("Posting to " + roomId + "@" + apiUrl);
+      }
+      log.payload(roomId, post);
+      ApiResponse response = call(endpoint, botToken, new PostMethod(apiUrl + "/posts"), post, metrics);
+      if (response.failure == Failure.REFUSED) {
+         // the channel may have been deleted or renamed, look it up again next time
+         channelIds.invalidate(channelKey(apiUrl, botToken, roomId));
+      }
+      return response;
+   }
+
+   /**
+    * @return the id of the channel, from the cache unless the room is given as id already or the cached id expired
+    */
+   String resolveChannelId(String endpoint, String botToken, String roomId) {
+      String name = StringUtils.removeStart(roomId, "#");
+      if (CHANNEL_ID.matcher(name).matches()) {
+         return name;
+      }
+      String apiUrl = getApiUrl(ShardPool.parse(endpoint).select(roomId));
+      String key = channelKey(apiUrl, botToken, roomId);
+      String channelId = channelIds.get(key);
+      if (channelId != null) {
+         return channelId;
+      }
+      channelId = lookupChannelId(endpoint, botToken, apiUrl, name);
+      if (channelId != null) {
+         channelIds.put(key, channelId);
+         NotificationTrace.mark("channel-resolved", roomId);
+      }
+      return channelId;
+   }
+
+   /**
+    * Channels are visible per bot, so the token is part of the key, though only as fingerprint.
+    */
+   private static String channelKey(String apiUrl, String botToken, String roomId) {
+      return apiUrl + ' ' + Long.toHexString(IdempotencyKey.fingerprint(StringUtils.defaultString(botToken))) + ' ' + roomId;
+   }
+
+   private String lookupChannelId(String endpoint, String botToken, String apiUrl, String name) {
+      String team;
+      String channel;
+      int slash = name.indexOf('/');
+      if (slash >= 0) {
+         team = name.substring(0, slash);
+         channel = name.substring(slash + 1);
+      } else {
+         JSONObject teams = execute(endpoint, botToken, new GetMethod(apiUrl + "/users/me/teams"), null, null);
+         JSONArray teamList = teams != null ? teams.optJSONArray("list") : null;
+         if (teamList == null || teamList.length() == 0) {
+            return null;
+         }
+         team = teamList.getJSONObject(0).getString("name");
+         channel = name;
+      }
+      JSONObject response = execute(endpoint, botToken, new GetMethod(apiUrl + "/teams/name/" + encode(team) + "/channels/name/"
+              + encode(channel)), null, null);
+      return response != null ? response.optString("id", null) : null;
+   }
+
+   /**
+    * Looks up users by user name with a single request, on the healthiest endpoint.
+    *
+    * @return the users found, or {@code null} if the lookup failed
+    */
+   JSONArray findUsersByUsernames(Collection<String> usernames) {
+      EndpointList endpoints = getEndpoints();
+      String endpoint = endpoints.get(endpoints.order()[0]);
+      String apiUrl = getApiUrl(ShardPool.parse(endpoint).getPrimary());
+      JSONObject response = execute(endpoint, botTokens.getPrimary(), new PostMethod(apiUrl + "/users/usernames"),
+              new JSONArray(usernames), null);
+      if (response == null) {
+         return null;
+      }
+      JSONArray users = response.optJSONArray("list");
+      return users != null ? users : new JSONArray();
+   }
+
+   /**
+    * @return the parsed response, or {@code null} if the call failed
+    * @see #call
+    */
+   private JSONObject execute(String endpoint, String botToken, HttpMethod method, Object body,
+                              NotificationMetrics.TargetMetrics metrics) {
+      return call(endpoint, botToken, method, body, metrics).json;
+   }
+
+   /**
+    * Executes an API call, recording its latency and status in the given metrics unless they are {@code null}, and
+    * the reachability of the endpoint in {@link EndpointHealth}. Array responses are wrapped as {@code {"list": [...]}}.
+    *
+    * @param body a {@link JSONObject} or {@link JSONArray} sent as request body, or {@code null}
+    */
+   private ApiResponse call(String endpoint, String botToken, HttpMethod method, Object body,
+                            NotificationMetrics.TargetMetrics metrics) {
+      long start = -1;
+      boolean answered = false;
+      try {
+         method.setRequestHeader("Authorization", "Bearer " + botToken);
+         if (body != null) {
+            ((EntityEnclosingMethod) method).setRequestEntity(new StringRequestEntity(body.toString(), "application/json", "UTF-8"));
+         }
+         if (metrics != null) {
+            start = metrics.begin();
+         }
+         NotificationTiming.begin();
+         long sent = System.nanoTime();
+         int responseCode;
+         String response;
+         try {
+            responseCode = getHttpClient(method.getURI().toString()).executeMethod(method);
+            response = method.getResponseBodyAsString();
+         } finally {
+            NotificationTiming.end("http");
+         }
+         long nanos = System.nanoTime() - sent;
+         answered = true;
+         NotificationTrace.mark("http", method.getName() + " " + method.getPath() + " " + responseCode + " in "
+                 + LatencyHistogram.toMillis(nanos) + " ms");
+         if (metrics != null) {
+            metrics.recordResponse(start, responseCode);
+            start = -1;
+         }
+         if (isGatewayError(responseCode)) {
+            EndpointHealth.get().recordUnreachable(endpoint, "HTTP " + responseCode);
+         } else {
+            EndpointHealth.get().recordReachable(endpoint, nanos);
+         }
+         if (responseCode < 200 || responseCode >= 300) {
+            log.sampled(Level.WARNING, "api-failed " + method.getName() + " " + responseCode, "Mattermost API call "
+                    + method.getName() + " " + method.getPath() + " failed with " + responseCode + ". Response: " + response, null);
+            if (isUnavailable(responseCode)) {
+               return ApiResponse.UNREACHABLE;
+            }
+            return responseCode == HttpStatus.SC_GATEWAY_TIMEOUT ? ApiResponse.UNCERTAIN : ApiResponse.REFUSED;
+         }
+         if (StringUtils.isBlank(response)) {
+            return new ApiResponse(new JSONObject(), null);
+         }
+         response = response.trim();
+         return new ApiResponse(response.startsWith("[") ? new JSONObject().put("list", new JSONArray(response))
+                 : new JSONObject(response), null);
+      } catch (IOException | RuntimeException e) {
+         log.sampled(Level.WARNING, "api-error " + method.getName(), "Error calling the Mattermost API: "
+                 + method.getName() + " " + method.getPath(), e);
+         if (start != -1) {
+            metrics.recordError(start);
+         }
+         if (e instanceof IOException && !(e instanceof SocketTimeoutException)) {
+            EndpointHealth.get().recordUnreachable(endpoint, e.getMessage());
+         }
+         NotificationTrace.mark("error", method.getName() + " " + method.getPath() + " " + e);
+         if (e instanceof IOException && isConnectFailure((IOException) e)) {
+            return ApiResponse.UNREACHABLE;
+         }
+         // a request that went out, or whose answer could not be read, may have been processed
+         return answered || e instanceof IOException ? ApiResponse.UNCERTAIN : ApiResponse.REFUSED;
+      } finally {
+         method.releaseConnection();
+      }
+   }
+
+   /**
+    * Why an API call failed, which decides whether it may be repeated on another endpoint.
+    */
+   private enum Failure {
+      /** The server answered with an error. */
+      REFUSED,
+      /** The request went out but was not answered, the server may have processed it. */
+      UNCERTAIN,
+      /** The request certainly did not reach Mattermost. */
+      UNREACHABLE
+   }
+
+   private static final class ApiResponse {
+
+      private static final ApiResponse REFUSED = new ApiResponse(null, Failure.REFUSED);
+      private static final ApiResponse UNCERTAIN = new ApiResponse(null, Failure.UNCERTAIN);
+      private static final ApiResponse UNREACHABLE = new ApiResponse(null, Failure.UNREACHABLE);
+
+      /** the parsed response, {@code null} if the call failed */
+      private final JSONObject json;
+      private final Failure failure;
+
+      ApiResponse(JSONObject json, Failure failure) {
+         this.json = json;
+         this.failure = failure;
+      }
+   }
+
+   private void release(String deliveryKey) {
+      if (deliveryKey != null) {
+         getDedupStore().release(deliveryKey);
+      }
+   }
+
+   private static String encode(String pathSegment) {
+      try {
+         return URLEncoder.encode(pathSegment, "UTF-8");
+      } catch (UnsupportedEncodingException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+}
@@ -0,0 +1,130 @@
+package jenkins.plugins.mattermost;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A pool of equivalent webhook urls or bot tokens, separated by {@code |}, used to spread posts over several
+ * credentials when a single one hits the server's rate limit.
+ * <p>
+ * Channels are assigned to members by consistent hashing, so all posts to one channel go through the same member
+ * and keep their order, and adding or removing a member only moves the channels of that member.
+ */
+public final class ShardPool {
+
+   static final char SEPARATOR = '|';
+
+   private static final int VIRTUAL_NODES = Integer.getInteger(ShardPool.class.getName() + ".virtualNodes", 64);
+   private static final int MAX_CACHED = Integer.getInteger(ShardPool.class.getName() + ".maxCached", 1000);
+   private static final ConcurrentMap<String, ShardPool> CACHE = new ConcurrentHashMap<>();
+   private static final ShardPool NONE = new ShardPool(Collections.<String>singletonList(null));
+
+   private final List<String> members;
+   private final long[] points;
+   private final int[] owners;
+
+   private ShardPool(List<String> members) {
+      this.members = members;
+      if (members.size() == 1) {
+         points = null;
+         owners = null;
+         return;
+      }
+      TreeMap<Long, Integer> ring = new TreeMap<>();
+      for (int m = 0; m < members.size(); m++) {
+         for (int v = 0; v < VIRTUAL_NODES; v++) {
+            ring.put(hash(members.get(m) + '#' + v), m);
+         }
+      }
+      points = new long[ring.size()];
+      owners = new int[ring.size()];
+      int i = 0;
+      for (Map.Entry<Long, Integer> point : ring.entrySet()) {
+         points[i] = point.getKey();
+         owners[i] = point.getValue();
+         i++;
+      }
+   }
+
+   /**
+    * @return the pool of the given setting, with a single member if it contains no {@code |}
+    */
+   public static ShardPool parse(String members) {
+      if (members == null) {
+         return NONE;
+      }
+      ShardPool pool = CACHE.get(members);
+      if (pool == null) {
+         pool = new ShardPool(Collections.unmodifiableList(split(members)));
+         if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+         }
+         CACHE.put(members, pool);
+      }
+      return pool;
+   }
+
+   private static List<String> split(String members) {
+      List<String> list = new ArrayList<>();
+      int start = 0;
+      for (int i = 0; i <= members.length(); i++) {
+         if (i == members.length() || members.charAt(i) == SEPARATOR) {
+            String member = members.substring(start, i).trim();
+            if (!member.isEmpty()) {
+               list.add(member);
+            }
+            start = i + 1;
+         }
+      }
+      if (list.isEmpty()) {
+         list.add(members);
+      }
+      return list;
+   }
+
+   /**
+    * @return the member that posts to the given channel
+    */
+   public String select(String channel) {
+      if (points == null) {
+         return members.get(0);
+      }
+      int index = Arrays.binarySearch(points, hash(channel != null ? channel : ""));
+      if (index < 0) {
+         index = -index - 1;
+      }
+      return members.get(owners[index == points.length ? 0 : index]);
+   }
+
+   public List<String> getMembers() {
+      return members;
+   }
+
+   public String getPrimary() {
+      return members.get(0);
+   }
+
+   public int size() {
+      return members.size();
+   }
+
+   /**
+    * FNV-1a spread with the MurmurHash3 finalizer, so that keys differing only in their last characters land far
+    * apart on the ring.
+    */
+   static long hash(String key) {
+      long h = IdempotencyKey.fingerprint(key);
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+   }
+}
@@ -4,33 +4,76 @@ import hudson.ProxyConfiguration;
 import jenkins.model.Jenkins;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.lang.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.net.ConnectException;
 import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
-public class StandardMattermostService implements MattermostService {
+public class StandardMattermostService implements KeyedMattermostService {
 
 	private static final Logger logger = Logger.getLogger(StandardMattermostService.class.getName());
+	private static final NotificationLogger log = new NotificationLogger(logger);
+
+	private static final MultiThreadedHttpConnectionManager CONNECTION_MANAGER = new MultiThreadedHttpConnectionManager();
+
+	private static final int PING_TIMEOUT_MILLIS = Integer.getInteger(StandardMattermostService.class.getName() + ".pingTimeoutMillis", 10000);
+	static final int CONNECT_TIMEOUT_MILLIS = Integer.getInteger(StandardMattermostService.class.getName() + ".connectTimeoutMillis", 10000);
+	static final int SOCKET_TIMEOUT_MILLIS = Integer.getInteger(StandardMattermostService.class.getName() + ".socketTimeoutMillis", 30000);
+	/** how long to wait for a pooled connection */
+	static final int CONNECTION_REQUEST_TIMEOUT_MILLIS = Integer.getInteger(StandardMattermostService.class.getName() + ".connectionRequestTimeoutMillis", 10000);
+	private static final int COMPRESSION_THRESHOLD_BYTES = Integer.getInteger(StandardMattermostService.class.getName() + ".compressionThresholdBytes", 8192);
+
+	static {
+		CONNECTION_MANAGER.getParams().setDefaultMaxConnectionsPerHost(
+				Integer.getInteger(StandardMattermostService.class.getName() + ".maxConnectionsPerHost", 20));
+		CONNECTION_MANAGER.getParams().setMaxTotalConnections(
+				Integer.getInteger(StandardMattermostService.class.getName() + ".maxTotalConnections", 100));
+		CONNECTION_MANAGER.getParams().setConnectionTimeout(CONNECT_TIMEOUT_MILLIS);
+		CONNECTION_MANAGER.getParams().setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+	}
 
 	private String endpoint;
-	private String[] roomIds;
+	private final String roomId;
 	private String icon;
+	private EndpointList endpoints;
+	private List<DeliveryTarget> targets;
+	private List<List<DeliveryTarget>> targetsByEndpoint;
+	private DeliveryDedupStore dedupStore = DeliveryDedupStore.getDefault();
+	private int compressionThreshold = GlobalConfigSnapshot.get().isCompressRequests() ? COMPRESSION_THRESHOLD_BYTES : -1;
 
 	public StandardMattermostService(String endpoint, String roomId, String icon) {
 		super();
 		this.endpoint = endpoint;
-		this.roomIds = roomId.split("[,; ]+");
+		this.roomId = roomId;
 		this.icon = icon;
+		parseTargets();
+	}
+
+	private void parseTargets() {
+		endpoints = EndpointList.parse(endpoint);
+		List<List<DeliveryTarget>> byEndpoint = new ArrayList<>(endpoints.size());
+		for (String url : endpoints.getEndpoints()) {
+			byEndpoint.add(DeliveryTarget.parse(url, roomId, icon));
+		}
+		targetsByEndpoint = byEndpoint;
+		targets = byEndpoint.get(0);
 	}
 
    @Override
@@ -55,68 +98,263 @@ public class StandardMattermostService implements MattermostService {
 
    @Override
 	public boolean publish(final JSONObject json, final String color) {
+		return publish(json, color, null);
+	}
+
+	@Override
+	public boolean publish(final JSONObject json, final String color, final String eventKey) {
 		boolean result = true;
-		for (String userAndRoomId : roomIds) {
-			String url = endpoint;
-			String roomId = "";
-			String userId = "jenkins";
-			String[] splitUserAndRoomId = userAndRoomId.split("@");
-			switch (splitUserAndRoomId.length) {
-				case 1:
-					roomId = splitUserAndRoomId[0];
-					break;
-				default: // should be 2
-					userId = splitUserAndRoomId[0];
-					roomId = splitUserAndRoomId[1];
+		for (int e = 0; e < endpoints.size(); e++) {
+			EndpointHealth.get().watch(endpoints.get(e));
+		}
+		for (int i = 0; i < targets.size(); i++) {
+			DeliveryTarget primaryTarget = targets.get(i);
+			String deliveryKey = null;
+			if (eventKey != null) {
+				// keyed by the primary endpoint, so a failover to another endpoint is not posted twice
+				deliveryKey = IdempotencyKey.forTarget(eventKey, primaryTarget.getEndpoint(), primaryTarget.getRaw());
+				DeliveryDedupStore.Claim claim = dedupStore.claim(deliveryKey);
+				if (claim == DeliveryDedupStore.Claim.DUPLICATE) {
+					if (logger.isLoggable(Level.FINE)) {
+						logger.fine("Skipping duplicate post to " + primaryTarget + " for " + eventKey);
+					}
+					NotificationMetrics.get().target(primaryTarget).recordDuplicate();
+					NotificationTrace.mark("duplicate", primaryTarget.toString());
+					continue;
+				}
+				if (claim == DeliveryDedupStore.Claim.RETRY) {
+					NotificationMetrics.get().target(primaryTarget).recordRetry();
+					NotificationTrace.mark("retry", primaryTarget.toString());
+				}
+			}
+
+			int[] order = endpoints.order();
+			for (int attempt = 0; attempt < order.length; attempt++) {
+				DeliveryTarget deliveryTarget = targetsByEndpoint.get(order[attempt]).get(i);
+				Delivery delivery = post(deliveryTarget, json);
+				if (delivery == Delivery.SENT) {
+					NotificationTrace.delivery(true);
 					break;
+				}
+				if (delivery == Delivery.UNREACHABLE && attempt + 1 < order.length) {
+					NotificationTrace.mark("failover", deliveryTarget.toString());
+					continue;
+				}
+				if (delivery != Delivery.UNCERTAIN) {
+					release(deliveryKey);
+				}
+				NotificationTrace.delivery(false);
+				result = false;
+				break;
 			}
+		}
+		return result;
+	}
 
-			String roomIdString = roomId;
+	/**
+	 * Outcome of one post to one endpoint.
+	 */
+	private enum Delivery {
+		SENT,
+		/** The server answered with an error. */
+		FAILED,
+		/** The request was sent but not answered, the server may have accepted the post, it must not be sent again. */
+		UNCERTAIN,
+		/** The post certainly did not reach Mattermost, it can be sent to another endpoint. */
+		UNREACHABLE
+	}
 
-			if (StringUtils.isEmpty(roomIdString)) {
-				roomIdString = "(default)";
-			}
+	private Delivery post(DeliveryTarget deliveryTarget, JSONObject json) {
+		String logicalEndpoint = deliveryTarget.getEndpoint();
+		String roomId = deliveryTarget.getChannel();
+		String target = deliveryTarget.toString();
+		NotificationMetrics.TargetMetrics metrics = NotificationMetrics.get().target(deliveryTarget);
 
-			logger.info("Posting: to " + roomIdString + "@" + url + ": " + json + " (" + color + ")");
-			HttpClient client = getHttpClient();
-			PostMethod post = new PostMethod(url);
+		long start = -1;
 
-			try {
-				if (!roomId.isEmpty()) json.put("channel", roomId);
-				json.put("username", userId);
-				json.put("icon_url", icon);
+		try {
+			if (!roomId.isEmpty()) json.put("channel", roomId);
+			json.put("username", deliveryTarget.getUser());
+			json.put("icon_url", icon);
 
-				post.addParameter("payload", json.toString());
-				post.getParams().setContentCharset("UTF-8");
-				int responseCode = client.executeMethod(post);
-				String response = post.getResponseBodyAsString();
-				if (responseCode != HttpStatus.SC_OK) {
-					logger.log(Level.WARNING, "Mattermost post may have failed. Response: " + response);
-					result = false;
+			String payload = json.toString();
+			log.payload(target, payload);
+			byte[] compressed = null;
+			if (isCompressed(payload)) {
+				NotificationTiming.begin();
+				try {
+					compressed = GzipEncoder.gzip(payload);
+				} finally {
+					NotificationTiming.end("compress");
 				}
-			} catch (Exception e) {
-				logger.log(Level.WARNING, "Error posting to Mattermost", e);
-				result = false;
+			}
+			start = metrics.begin();
+			PostResult result;
+			NotificationTiming.begin();
+			try {
+				result = postPayload(deliveryTarget.getUrl(), payload, compressed);
 			} finally {
-				logger.info("Posting succeeded");
-				post.releaseConnection();
+				NotificationTiming.end("http");
+			}
+			int responseCode = result.getStatus();
+			String response = result.getBody();
+			long nanos = System.nanoTime() - start;
+			metrics.recordResponse(start, responseCode);
+			start = -1;
+			log.posted(target, responseCode, nanos, payload.length());
+			NotificationTrace.mark("http", target + " " + responseCode + " in " + LatencyHistogram.toMillis(nanos) + " ms");
+			if (isGatewayError(responseCode)) {
+				log.sampled(Level.WARNING, "post-unavailable " + metrics.getEndpoint(),
+						"Mattermost at " + target + " is unavailable, HTTP " + responseCode, null);
+				EndpointHealth.get().recordUnreachable(logicalEndpoint, "HTTP " + responseCode);
+				// the ingress refused the request before Mattermost saw it, unless it timed out waiting for Mattermost
+				return isUnavailable(responseCode) ? Delivery.UNREACHABLE : Delivery.UNCERTAIN;
+			}
+			EndpointHealth.get().recordReachable(logicalEndpoint, nanos);
+			if (responseCode != HttpStatus.SC_OK) {
+				log.sampled(Level.WARNING, "post-failed " + metrics.getEndpoint(),
+						"Mattermost post to " + target + " may have failed with " + responseCode + ". Response: " + response, null);
+				return Delivery.FAILED;
+			}
+			return Delivery.SENT;
+		} catch (IOException e) {
+			log.sampled(Level.WARNING, "post-error " + metrics.getEndpoint(), "Error posting to Mattermost at " + target, e);
+			recordError(metrics, start);
+			NotificationTrace.mark(e instanceof SocketTimeoutException ? "timeout" : "error", target + " " + e);
+			if (!(e instanceof SocketTimeoutException)) {
+				EndpointHealth.get().recordUnreachable(logicalEndpoint, e.getMessage());
 			}
+			// once the request went out, e.g. on a timeout or a reset connection, the server may have accepted the
+			// post: keep the key claimed rather than risk a duplicate
+			return isConnectFailure(e) ? Delivery.UNREACHABLE : Delivery.UNCERTAIN;
+		} catch (Exception e) {
+			log.sampled(Level.WARNING, "post-error " + metrics.getEndpoint(), "Error posting to Mattermost at " + target, e);
+			recordError(metrics, start);
+			NotificationTrace.mark("error", target + " " + e);
+			return Delivery.FAILED;
+		}
+	}
+
+	/**
+	 * Sends the payload of a webhook post. Transports other than commons-httpclient override this.
+	 *
+	 * @param compressed the gzip-compressed payload if it is to be sent compressed, otherwise {@code null}
+	 */
+	protected PostResult postPayload(String url, String payload, byte[] compressed) throws IOException {
+		PostMethod post = new PostMethod(url);
+		try {
+			if (compressed != null) {
+				// webhooks take the payload as JSON body as well, which compresses better than the form encoding
+				post.setRequestEntity(new ByteArrayRequestEntity(compressed, "application/json; charset=UTF-8"));
+				post.setRequestHeader("Content-Encoding", "gzip");
+			} else {
+				post.addParameter("payload", payload);
+				post.getParams().setContentCharset("UTF-8");
+			}
+			int responseCode = getHttpClient(url).executeMethod(post);
+			return new PostResult(responseCode, post.getResponseBodyAsString());
+		} finally {
+			post.releaseConnection();
+		}
+	}
+
+	/**
+	 * Status and body of the response to a webhook post.
+	 */
+	protected static final class PostResult {
+
+		private final int status;
+		private final String body;
+
+		public PostResult(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public String getBody() {
+			return body;
+		}
+	}
+
+	/**
+	 * @return whether the server in front of Mattermost failed, which marks the endpoint as unreachable
+	 */
+	static boolean isGatewayError(int responseCode) {
+		return isUnavailable(responseCode) || responseCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+	}
+
+	/**
+	 * @return whether the request was refused without reaching Mattermost, so that it can be sent elsewhere; a
+	 * gateway timeout does not qualify, Mattermost may have processed the request after all
+	 */
+	static boolean isUnavailable(int responseCode) {
+		return responseCode == HttpStatus.SC_BAD_GATEWAY || responseCode == HttpStatus.SC_SERVICE_UNAVAILABLE;
+	}
+
+	/**
+	 * @return whether the connection could not be established, so that nothing was sent
+	 */
+	static boolean isConnectFailure(IOException e) {
+		// both clients also report timeouts while connecting or waiting for a pooled connection this way
+		return e instanceof ConnectException || e instanceof UnknownHostException || e instanceof NoRouteToHostException
+				|| e instanceof org.apache.commons.httpclient.ConnectTimeoutException
+				|| e instanceof org.apache.http.conn.ConnectTimeoutException;
+	}
+
+	/**
+	 * Checks that the Mattermost server of the endpoint answers, without posting anything.
+	 *
+	 * @return the HTTP status of the server's {@code /api/v4/system/ping}
+	 */
+	public int ping() throws IOException {
+		String url = RestMattermostService.getApiUrl(ShardPool.parse(endpoints.getPrimary()).getPrimary()) + "/system/ping";
+		GetMethod get = new GetMethod(url);
+		get.getParams().setSoTimeout(PING_TIMEOUT_MILLIS);
+		try {
+			return getHttpClient(url).executeMethod(get);
+		} finally {
+			get.releaseConnection();
+		}
+	}
+
+	private static void recordError(NotificationMetrics.TargetMetrics metrics, long start) {
+		if (start != -1) {
+			metrics.recordError(start);
+		}
+	}
+
+	private void release(String deliveryKey) {
+		if (deliveryKey != null) {
+			dedupStore.release(deliveryKey);
 		}
-		return result;
 	}
 
 	protected HttpClient getHttpClient() {
-		HttpClient client = new HttpClient();
+		// connections are pooled across services, so consecutive posts to the same server reuse keep-alive connections
+		HttpClient client = new HttpClient(CONNECTION_MANAGER);
+		client.getParams().setConnectionManagerTimeout(CONNECTION_REQUEST_TIMEOUT_MILLIS);
+		return client;
+	}
+
+	/**
+	 * @return a client for requests to the given url, through the Jenkins proxy unless the host is excluded from it
+	 */
+	protected HttpClient getHttpClient(String url) {
+		HttpClient client = getHttpClient();
 		if (Jenkins.getInstance() != null) {
 			ProxyConfiguration proxy = Jenkins.getInstance().proxy;
 			if (proxy != null) {
-				if (isProxyRequired(proxy.getNoProxyHostPatterns())) {
+				if (isProxyRequired(url, proxy.getNoProxyHostPatterns())) {
 					client.getHostConfiguration().setProxy(proxy.name, proxy.port);
 					String username = proxy.getUserName();
 					String password = proxy.getPassword();
 					// Consider it to be passed if username specified. Sufficient?
 					if (username != null && !"".equals(username.trim())) {
-						logger.info("Using proxy authentication (user=" + username + ")");
+						logger.fine("Using proxy authentication (user=" + username + ")");
 						// http://hc.apache.org/httpclient-3.x/authentication.html#Proxy_Authentication
 						// and
 						// http://svn.apache.org/viewvc/httpcomponents/oac.hc3x/trunk/src/examples/BasicAuthenticationExample.java?view=markup
@@ -130,21 +368,77 @@ public class StandardMattermostService implements MattermostService {
 	}
 
 	boolean isProxyRequired(List<Pattern> noProxyHosts) {
+		return isProxyRequired(ShardPool.parse(endpoints.getPrimary()).getPrimary(), noProxyHosts);
+	}
+
+	/**
+	 * Decided per request, as the endpoints and pool members of one setting may be on different hosts.
+	 */
+	boolean isProxyRequired(String target, List<Pattern> noProxyHosts) {
 		try {
-			URL url = new URL(endpoint);
+			URL url = new URL(target);
 			for (Pattern p : noProxyHosts) {
 				if (p.matcher(url.getHost()).matches())
 					return false;
 			}
 		} catch (MalformedURLException e) {
-			logger.log(Level.WARNING, "A malformed URL [" + endpoint + "] is defined as endpoint, please check your settings");
+			logger.log(Level.WARNING, "A malformed URL [" + target + "] is defined as endpoint, please check your settings");
 			// default behavior : proxy still activated
 			return true;
 		}
 		return true;
 	}
 
+	protected String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return the targets at the primary endpoint
+	 */
+	protected List<DeliveryTarget> getTargets() {
+		return targets;
+	}
+
+	protected EndpointList getEndpoints() {
+		return endpoints;
+	}
+
+	protected String getIcon() {
+		return icon;
+	}
+
+	protected DeliveryDedupStore getDedupStore() {
+		return dedupStore;
+	}
+
 	void setEndpoint(String endpoint) {
 		this.endpoint = endpoint;
+		parseTargets();
+	}
+
+	void setDedupStore(DeliveryDedupStore dedupStore) {
+		this.dedupStore = dedupStore;
+	}
+
+	/**
+	 * @return whether the UTF-8 encoding of the payload reaches the compression threshold
+	 */
+	private boolean isCompressed(String payload) {
+		if (compressionThreshold < 0) {
+			return false;
+		}
+		// every character takes one to three bytes, so most payloads are decided without counting
+		if (payload.length() >= compressionThreshold) {
+			return true;
+		}
+		return payload.length() * 3L >= compressionThreshold && GzipEncoder.utf8Length(payload) >= compressionThreshold;
+	}
+
+	/**
+	 * @param compressionThreshold payloads of at least this many UTF-8 bytes are sent gzip-compressed, -1 to never compress
+	 */
+	void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
 	}
 }
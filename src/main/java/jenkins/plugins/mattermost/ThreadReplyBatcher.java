@@ -0,0 +1,172 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.Run;
+import jenkins.util.Timer;
+import org.apache.commons.lang.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the messages of one build thread and posts them as replies to the build's root post, at most one reply
+ * per interval and color. Messages arriving in between are merged into the next reply.
+ * <p>
+ * The root post is created with the first batch, and again with the next batch if creating it failed. A batcher
+ * removes itself once an interval passes without messages.
+ */
+public class ThreadReplyBatcher {
+
+   private static final Logger logger = Logger.getLogger(ThreadReplyBatcher.class.getName());
+
+   private static final ConcurrentMap<String, ThreadReplyBatcher> BATCHERS = new ConcurrentHashMap<>();
+
+   private final String key;
+   private final Run<?, ?> run;
+   private final String rooms;
+   private final UpdatableMattermostService service;
+   private final JSONObject rootJson;
+   private final long intervalMillis;
+   private final ScheduledExecutorService timer;
+
+   private final List<String[]> pending = new ArrayList<>();
+   private Map<String, String> rootPostIds;
+   private boolean scheduled;
+   private boolean closed;
+
+   ThreadReplyBatcher(String key, Run<?, ?> run, String rooms, UpdatableMattermostService service,
+                      JSONObject rootJson, long intervalMillis, ScheduledExecutorService timer) {
+      this.key = key;
+      this.run = run;
+      this.rooms = StringUtils.defaultString(rooms);
+      this.service = service;
+      this.rootJson = rootJson;
+      this.intervalMillis = intervalMillis;
+      this.timer = timer;
+   }
+
+   /**
+    * Queues a message for the thread of the given run and rooms.
+    *
+    * @param rootJson the root post to create if the run does not have one for these rooms yet
+    * @param color    the attachment color of the reply, plain text if empty
+    */
+   public static void add(Run<?, ?> run, String rooms, UpdatableMattermostService service, JSONObject rootJson,
+                          long intervalMillis, String message, String color) {
+      String key = run.getExternalizableId() + '|' + rooms;
+      while (true) {
+         ThreadReplyBatcher batcher = BATCHERS.get(key);
+         if (batcher == null) {
+            ThreadReplyBatcher created = new ThreadReplyBatcher(key, run, rooms, service, rootJson, intervalMillis,
+                    Timer.get());
+            batcher = BATCHERS.putIfAbsent(key, created);
+            if (batcher == null) {
+               batcher = created;
+            }
+         }
+         if (batcher.add(message, color)) {
+            return;
+         }
+         // the batcher went idle and closed concurrently
+         BATCHERS.remove(key, batcher);
+      }
+   }
+
+   synchronized boolean add(String message, String color) {
+      if (closed) {
+         return false;
+      }
+      pending.add(new String[]{message, StringUtils.defaultString(color)});
+      if (!scheduled) {
+         scheduled = true;
+         schedule(0);
+      }
+      return true;
+   }
+
+   private void schedule(long delayMillis) {
+      timer.schedule(new Runnable() {
+         @Override
+         public void run() {
+            tick();
+         }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+   }
+
+   void tick() {
+      List<String[]> batch;
+      synchronized (this) {
+         if (pending.isEmpty()) {
+            scheduled = false;
+            closed = true;
+            BATCHERS.remove(key, this);
+            return;
+         }
+         batch = new ArrayList<>(pending);
+         pending.clear();
+      }
+      try {
+         send(batch);
+      } catch (RuntimeException e) {
+         logger.log(Level.WARNING, "Error posting Mattermost thread reply", e);
+      } finally {
+         schedule(intervalMillis);
+      }
+   }
+
+   private void send(List<String[]> batch) {
+      if (rootPostIds == null) {
+         MattermostPostAction action = run != null ? MattermostPostAction.forRooms(run, rooms) : null;
+         if (action != null) {
+            rootPostIds = action.getPostIds();
+         } else {
+            Map<String, String> created = service.publishForUpdate(rootJson, "good", null);
+            if (!created.isEmpty()) {
+               rootPostIds = created;
+               if (run != null) {
+                  run.addAction(new MattermostPostAction(rooms, created));
+               }
+            }
+         }
+      }
+      // without a root post the replies are posted on their own, the next batch tries to create it again
+      Map<String, String> roots = rootPostIds != null ? rootPostIds : Collections.<String, String>emptyMap();
+      int start = 0;
+      for (int i = 1; i <= batch.size(); i++) {
+         String color = batch.get(start)[1];
+         if (i < batch.size() && batch.get(i)[1].equals(color)) {
+            continue;
+         }
+         List<String> texts = new ArrayList<>(i - start);
+         for (String[] message : batch.subList(start, i)) {
+            texts.add(message[0]);
+         }
+         if (!service.publishReply(roots, reply(StringUtils.join(texts, "\n"), color), color)) {
+            logger.warning("Mattermost thread reply with " + texts.size() + " messages may have failed");
+         }
+         start = i;
+      }
+   }
+
+   private static JSONObject reply(String text, String color) {
+      JSONObject reply = new JSONObject();
+      if (color.isEmpty()) {
+         reply.put("text", text);
+         return reply;
+      }
+      JSONObject attachment = new JSONObject();
+      attachment.put("color", color);
+      attachment.put("text", text);
+      reply.put("attachments", new JSONArray().put(attachment));
+      return reply;
+   }
+}
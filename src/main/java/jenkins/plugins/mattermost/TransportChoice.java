@@ -0,0 +1,33 @@
+package jenkins.plugins.mattermost;
+
+/**
+ * HTTP client used to post to incoming webhooks.
+ */
+public enum TransportChoice {
+    COMMONS_HTTPCLIENT("Apache Commons HttpClient 3.1"),
+    HTTPCLIENT_4("Apache HttpClient 4.5, pooled");
+
+    private final String displayName;
+
+    private TransportChoice(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return this.displayName;
+    }
+
+    public StandardMattermostService newService(String endpoint, String roomId, String icon) {
+        return this == HTTPCLIENT_4 ? new PooledMattermostService(endpoint, roomId, icon)
+                : new StandardMattermostService(endpoint, roomId, icon);
+    }
+
+    public static TransportChoice forDisplayName(String displayName) {
+        for (TransportChoice transportChoice : values()) {
+            if (transportChoice.getDisplayName().equals(displayName)) {
+                return transportChoice;
+            }
+        }
+        return null;
+    }
+}
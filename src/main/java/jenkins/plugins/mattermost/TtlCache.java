@@ -0,0 +1,78 @@
+package jenkins.plugins.mattermost;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache for the results of Mattermost API lookups.
+ * <p>
+ * Once the capacity is reached the least recently used entry is evicted, and entries older than the time-to-live
+ * are treated as absent, so that renamed channels or users are picked up eventually.
+ */
+public final class TtlCache<K, V> {
+
+   private final long ttl;
+   private final LinkedHashMap<K, Entry<V>> entries;
+
+   TtlCache(final int capacity, long ttl) {
+      if (capacity <= 0) {
+         throw new IllegalArgumentException("capacity must be positive: " + capacity);
+      }
+      this.ttl = ttl;
+      this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            return size() > capacity;
+         }
+      };
+   }
+
+   /**
+    * @return the cached value, or {@code null} if there is none or it expired
+    */
+   public V get(K key) {
+      return get(key, System.currentTimeMillis());
+   }
+
+   synchronized V get(K key, long now) {
+      Entry<V> entry = entries.get(key);
+      if (entry == null) {
+         return null;
+      }
+      if (now - entry.created >= ttl) {
+         entries.remove(key);
+         return null;
+      }
+      return entry.value;
+   }
+
+   public void put(K key, V value) {
+      put(key, value, System.currentTimeMillis());
+   }
+
+   synchronized void put(K key, V value, long now) {
+      entries.put(key, new Entry<>(value, now));
+   }
+
+   /**
+    * Drops an entry that turned out to be stale before its time-to-live ran out.
+    */
+   public synchronized void invalidate(K key) {
+      entries.remove(key);
+   }
+
+   public synchronized int size() {
+      return entries.size();
+   }
+
+   private static final class Entry<V> {
+
+      private final V value;
+      private final long created;
+
+      Entry(V value, long created) {
+         this.value = value;
+         this.created = created;
+      }
+   }
+}
@@ -0,0 +1,28 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * A {@link KeyedMattermostService} that knows the ids of the posts it creates and can edit or reply to them afterwards.
+ */
+public interface UpdatableMattermostService extends KeyedMattermostService {
+
+	/**
+	 * Publishes like {@link #publish(JSONObject, String, String)}.
+	 *
+	 * @return the id of the created post per room, rooms that failed are left out
+	 */
+	Map<String, String> publishForUpdate(JSONObject json, String color, String eventKey);
+
+	/**
+	 * Replaces the content of the given posts, rooms without a known post id get a new post instead.
+	 */
+	boolean publishOrUpdate(Map<String, String> postIds, JSONObject json, String color, String eventKey);
+
+	/**
+	 * Posts a reply in the thread of the given root posts, rooms without a known root post get a new post instead.
+	 */
+	boolean publishReply(Map<String, String> rootPostIds, JSONObject json, String color);
+}
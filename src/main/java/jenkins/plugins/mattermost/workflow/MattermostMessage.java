@@ -0,0 +1,77 @@
+package jenkins.plugins.mattermost.workflow;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * One message of a {@link MattermostSendBatchStep}; unset fields fall back to the global configuration.
+ */
+public class MattermostMessage extends AbstractDescribableImpl<MattermostMessage> {
+
+    private final @Nonnull String message;
+    private String color;
+    private String channel;
+    private String endpoint;
+    private String icon;
+
+    @DataBoundConstructor
+    public MattermostMessage(@Nonnull String message) {
+        this.message = message;
+    }
+
+    @Nonnull
+    public String getMessage() {
+        return message;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    @DataBoundSetter
+    public void setColor(String color) {
+        this.color = Util.fixEmpty(color);
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    @DataBoundSetter
+    public void setChannel(String channel) {
+        this.channel = Util.fixEmpty(channel);
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @DataBoundSetter
+    public void setEndpoint(String endpoint) {
+        this.endpoint = Util.fixEmpty(endpoint);
+    }
+
+    public String getIcon() {
+        return icon;
+    }
+
+    @DataBoundSetter
+    public void setIcon(String icon) {
+        this.icon = Util.fixEmpty(icon);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<MattermostMessage> {
+
+        @Override
+        public String getDisplayName() {
+            return "Mattermost message";
+        }
+    }
+}
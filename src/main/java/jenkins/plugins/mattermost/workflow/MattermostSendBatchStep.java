@@ -0,0 +1,230 @@
+package jenkins.plugins.mattermost.workflow;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.plugins.mattermost.GlobalConfigSnapshot;
+import jenkins.plugins.mattermost.MattermostService;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Workflow step to send several Mattermost messages in one call, e.g. one per matrix cell or service.
+ * <p>
+ * Returns one result map per message, in order, with the keys {@code channel} and {@code success}.
+ */
+public class MattermostSendBatchStep extends AbstractStepImpl {
+
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    private final @Nonnull List<MattermostMessage> messages;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private boolean failOnError;
+
+    @DataBoundConstructor
+    public MattermostSendBatchStep(@Nonnull List<MattermostMessage> messages) {
+        this.messages = messages;
+    }
+
+    @Nonnull
+    public List<MattermostMessage> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @DataBoundSetter
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : DEFAULT_PARALLELISM;
+    }
+
+    public boolean isFailOnError() {
+        return failOnError;
+    }
+
+    @DataBoundSetter
+    public void setFailOnError(boolean failOnError) {
+        this.failOnError = failOnError;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(MattermostSendBatchStepExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "mattermostSendBatch";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Send several Mattermost messages";
+        }
+    }
+
+    public static class MattermostSendBatchStepExecution extends AbstractSynchronousNonBlockingStepExecution<List<HashMap<String, Object>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final Logger logger = Logger.getLogger(MattermostSendBatchStepExecution.class.getName());
+
+        private static final int THREADS = Integer.getInteger(MattermostSendBatchStep.class.getName() + ".threads", 8);
+
+        //shared by all running batch steps, so concurrent pipelines cannot start an unbounded number of threads
+        private static final ThreadPoolExecutor SENDERS = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamingThreadFactory(new DaemonThreadFactory(), "mattermostSendBatch"));
+
+        static {
+            SENDERS.allowCoreThreadTimeOut(true);
+        }
+
+        @Inject
+        transient MattermostSendBatchStep step;
+
+        @StepContextParameter
+        transient TaskListener listener;
+
+        transient GlobalConfigSnapshot global;
+
+        @Override
+        protected List<HashMap<String, Object>> run() throws Exception {
+            if (Jenkins.getInstance() == null) {
+                listener.error("Mattermost notification failed: Jenkins is not available");
+                return new ArrayList<>();
+            }
+
+            //global config is resolved once for the whole batch
+            global = GlobalConfigSnapshot.get();
+            String defaultEndpoint = global.getEndpoint();
+            String defaultChannel = global.getRoom();
+            String defaultIcon = global.getIcon();
+
+            List<String> channels = new ArrayList<>(step.messages.size());
+            List<Callable<Boolean>> sends = new ArrayList<>(step.messages.size());
+            for (MattermostMessage message : step.messages) {
+                String endpoint = message.getEndpoint() != null ? message.getEndpoint() : defaultEndpoint;
+                String channel = message.getChannel() != null ? message.getChannel() : defaultChannel;
+                String icon = message.getIcon() != null ? message.getIcon() : defaultIcon;
+                String color = message.getColor() != null ? message.getColor() : "";
+                channels.add(channel);
+                sends.add(new Send(getMattermostService(endpoint, channel, icon), message.getMessage(), color));
+            }
+
+            List<Boolean> outcomes = sendAll(sends, step.parallelism);
+            List<HashMap<String, Object>> results = new ArrayList<>(sends.size());
+            int failures = 0;
+            for (int i = 0; i < outcomes.size(); i++) {
+                boolean success = outcomes.get(i);
+                if (!success) {
+                    failures++;
+                }
+                HashMap<String, Object> result = new HashMap<>();
+                result.put("channel", channels.get(i));
+                result.put("success", success);
+                results.add(result);
+            }
+
+            listener.getLogger().printf("Mattermost batch sent %d of %d messages%n", results.size() - failures, results.size());
+            if (failures > 0 && step.failOnError) {
+                throw new AbortException(failures + " Mattermost notifications failed. See Jenkins logs for details.");
+            } else if (failures > 0) {
+                listener.error(failures + " Mattermost notifications failed. See Jenkins logs for details.");
+            }
+            return results;
+        }
+
+        /**
+         * Runs the sends on the shared pool with at most {@code parallelism} of them in flight.
+         *
+         * @return the outcome of every send, in order
+         */
+        private static List<Boolean> sendAll(List<Callable<Boolean>> sends, int parallelism) throws InterruptedException {
+            CompletionService<Boolean> completion = new ExecutorCompletionService<>(SENDERS);
+            Map<Future<Boolean>, Integer> inFlight = new HashMap<>();
+            Boolean[] outcomes = new Boolean[sends.size()];
+            int next = 0;
+            try {
+                for (; next < Math.min(parallelism, sends.size()); next++) {
+                    inFlight.put(completion.submit(sends.get(next)), next);
+                }
+                for (int done = 0; done < sends.size(); done++) {
+                    Future<Boolean> future = completion.take();
+                    outcomes[inFlight.remove(future)] = isSuccess(future);
+                    if (next < sends.size()) {
+                        inFlight.put(completion.submit(sends.get(next)), next);
+                        next++;
+                    }
+                }
+            } finally {
+                //only left over when the step is interrupted
+                for (Future<Boolean> future : inFlight.keySet()) {
+                    future.cancel(true);
+                }
+            }
+            return Arrays.asList(outcomes);
+        }
+
+        private static boolean isSuccess(Future<Boolean> future) throws InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                logger.log(Level.WARNING, "Error sending Mattermost message", e.getCause());
+                return false;
+            }
+        }
+
+        //streamline unit testing
+        MattermostService getMattermostService(String endpoint, String channel, String icon) {
+            return global.getTransport().newService(endpoint, channel, icon);
+        }
+    }
+
+    private static class Send implements Callable<Boolean> {
+
+        private final MattermostService service;
+        private final String message;
+        private final String color;
+
+        Send(MattermostService service, String message, String color) {
+            this.service = service;
+            this.message = message;
+            this.color = color;
+        }
+
+        @Override
+        public Boolean call() {
+            return service.publish(message, color);
+        }
+    }
+}
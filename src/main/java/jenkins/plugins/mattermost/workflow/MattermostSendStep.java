@@ -11,11 +11,16 @@ import hudson.plugins.git.GitChangeSetList;
 import hudson.scm.ChangeLogSet;
 import hudson.scm.EditType;
 import hudson.tasks.test.AbstractTestResultAction;
+import hudson.util.StreamTaskListener;
 import jenkins.model.Jenkins;
-import jenkins.model.JenkinsLocationConfiguration;
-import jenkins.plugins.mattermost.MattermostNotifier;
+import jenkins.plugins.mattermost.GlobalConfigSnapshot;
 import jenkins.plugins.mattermost.MattermostService;
-import jenkins.plugins.mattermost.StandardMattermostService;
+import jenkins.plugins.mattermost.NotificationDispatcher;
+import jenkins.plugins.mattermost.NotificationTrace;
+import jenkins.plugins.mattermost.PayloadSplitter;
+import jenkins.plugins.mattermost.RestMattermostService;
+import jenkins.plugins.mattermost.ThreadReplyBatcher;
+import jenkins.plugins.mattermost.UpdatableMattermostService;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
@@ -29,21 +34,30 @@ import org.kohsuke.stapler.DataBoundSetter;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Workflow step to send a Slack channel notification.
  */
 public class MattermostSendStep extends AbstractStepImpl {
 
+    private static final Logger logger = Logger.getLogger(MattermostSendStep.class.getName());
+
     private final @Nonnull String message;
     private String color;
     private String channel;
     private String endpoint;
     private String icon;
     private boolean failOnError;
-
+    private boolean wait = true;
+    private boolean thread;
 
     @Nonnull
     public String getMessage() {
@@ -96,6 +110,24 @@ public class MattermostSendStep extends AbstractStepImpl {
         this.failOnError = failOnError;
     }
 
+    public boolean isWait() {
+        return wait;
+    }
+
+    @DataBoundSetter
+    public void setWait(boolean wait) {
+        this.wait = wait;
+    }
+
+    public boolean isThread() {
+        return thread;
+    }
+
+    @DataBoundSetter
+    public void setThread(boolean thread) {
+        this.thread = thread;
+    }
+
     @DataBoundConstructor
     public MattermostSendStep(@Nonnull String message) {
         this.message = message;
@@ -129,36 +161,68 @@ public class MattermostSendStep extends AbstractStepImpl {
         @StepContextParameter
         transient TaskListener listener;
 
+        //global settings as of the start of the step, so one step never mixes two configurations
+        transient GlobalConfigSnapshot global;
+
         @Override
         protected Void run() throws Exception {
 
             //default to global config values if not set in step, but allow step to override all global settings
-            Jenkins jenkins;
             //Jenkins.getInstance() may return null, no message sent in that case
             try {
-                jenkins = Jenkins.getInstance();
+                Jenkins.getInstance();
             } catch (NullPointerException ne) {
                 listener.error(String.format("Mattermost notification failed with exception: %s", ne), ne);
                 return null;
             }
+            global = GlobalConfigSnapshot.get();
+
+            NotificationTrace trace = NotificationTrace.start("step", "mattermostSend");
+            try {
+                return send();
+            } finally {
+                trace.close();
+            }
+        }
 
-            MattermostNotifier.DescriptorImpl slackDesc = jenkins.getDescriptorByType(MattermostNotifier.DescriptorImpl.class);
-            String team = step.endpoint != null ? step.endpoint : slackDesc.getEndpoint();
-            String channel = step.channel != null ? step.channel : slackDesc.getRoom();
-            String icon = step.icon != null ? step.icon: slackDesc.getIcon();
+        private Void send() throws Exception {
+            String team = step.endpoint != null ? step.endpoint : global.getEndpoint();
+            String channel = step.channel != null ? step.channel : global.getRoom();
+            String icon = step.icon != null ? step.icon: global.getIcon();
             String color = step.color != null ? step.color : "";
 
             //placing in console log to simplify testing of retrieving values from global config or from step field; also used for tests
             listener.getLogger().printf("Mattermost Send Pipeline step configured values from global config - connector: %s, icon: %s, channel: %s, color: %s", step.endpoint == null, step.icon == null, step.channel == null, step.color == null);
 
+            if (step.thread && !StringUtils.isBlank(step.message)) {
+                String botToken = global.getBotToken();
+                if (StringUtils.isEmpty(botToken)) {
+                    listener.error("Threaded Mattermost messages require a bot access token in the global configuration, posting without thread.");
+                } else {
+                    //replies are batched per build thread and posted in the background, so the step does not wait
+                    WorkflowRun build = getContext().get(WorkflowRun.class);
+                    JSONObject root = new MessageBuilder(build, global).appendProjectAsAuthor().getMattermostJSON();
+                    ThreadReplyBatcher.add(build, channel, getThreadedMattermostService(team, channel, icon, botToken), root,
+                            TimeUnit.SECONDS.toMillis(global.getThreadReplyInterval()), step.message, color);
+                    listener.getLogger().println("Mattermost message queued for the build thread.");
+                    return null;
+                }
+            }
+
             MattermostService slackService = getMattermostService(team, channel, icon);
-            boolean publishSuccess;
+            JSONObject buildStatus = null;
             if(StringUtils.isBlank(step.message)) {
                 WorkflowRun build = getContext().get(WorkflowRun.class);
-                publishSuccess = slackService.publish(getBuildStatusJSON(build, listener.getLogger()), color);
-            } else {
-                publishSuccess = slackService.publish(step.message, color);
+                buildStatus = getBuildStatusJSON(build, global, listener.getLogger());
+            }
+            if (!step.wait) {
+                //failOnError only applies when waiting, the outcome is appended to the build log once delivered
+                if (!NotificationDispatcher.get().submit(new AsyncDelivery(slackService, buildStatus, step.message, color, channel, getRun()))) {
+                    listener.error("Mattermost notification queue is full, message dropped.");
+                }
+                return null;
             }
+            boolean publishSuccess = publish(slackService, buildStatus, step.message, color);
             if (!publishSuccess && step.failOnError) {
                 throw new AbortException("Mattermost notification failed. See Jenkins logs for details.");
             } else if (!publishSuccess) {
@@ -169,13 +233,89 @@ public class MattermostSendStep extends AbstractStepImpl {
 
         //streamline unit testing
         MattermostService getMattermostService(String team, String channel, String icon) {
-            return new StandardMattermostService(team, channel, icon);
+            return global.getTransport().newService(team, channel, icon);
         }
 
+        Run<?, ?> getRun() throws IOException, InterruptedException {
+            return getContext().get(Run.class);
+        }
+
+        UpdatableMattermostService getThreadedMattermostService(String team, String channel, String icon, String botToken) {
+            return new RestMattermostService(team, channel, icon, botToken);
+        }
+
+    }
+
+    private static boolean publish(MattermostService service, JSONObject buildStatus, String message, String color) {
+        if (buildStatus != null) {
+            //commit lists of large change sets may not fit into a single post
+            boolean result = true;
+            for (JSONObject part : PayloadSplitter.split(buildStatus)) {
+                result &= service.publish(part, color);
+            }
+            return result;
+        }
+        return service.publish(message, color);
     }
 
-    private static JSONObject getBuildStatusJSON(WorkflowRun build, PrintStream logger) {
-        MessageBuilder message = new MessageBuilder(build)
+    /**
+     * Publishes a message queued by a step running with {@code wait: false}. The step and its listener are gone by
+     * then, so the outcome is appended to the log of the run, or to the Jenkins log if the run has finished.
+     */
+    private static class AsyncDelivery implements Runnable {
+
+        private final MattermostService service;
+        private final JSONObject buildStatus;
+        private final String message;
+        private final String color;
+        private final String channel;
+        private final Run<?, ?> run;
+
+        AsyncDelivery(MattermostService service, JSONObject buildStatus, String message, String color, String channel,
+                      Run<?, ?> run) {
+            this.service = service;
+            this.buildStatus = buildStatus;
+            this.message = message;
+            this.color = color;
+            this.channel = channel;
+            this.run = run;
+        }
+
+        @Override
+        public void run() {
+            boolean success = publish(service, buildStatus, message, color);
+            if (run != null && run.isBuilding() && report(success)) {
+                return;
+            }
+            if (success) {
+                logger.fine("Queued Mattermost notification to " + channel + " delivered");
+            } else {
+                logger.warning("Queued Mattermost notification to " + channel + " failed");
+            }
+        }
+
+        /**
+         * @return {@code false} if the build log could not be written
+         */
+        private boolean report(boolean success) {
+            try (OutputStream out = new FileOutputStream(run.getLogFile(), true)) {
+                TaskListener buildLog = new StreamTaskListener(out);
+                if (success) {
+                    buildLog.getLogger().println("Mattermost notification delivered.");
+                } else {
+                    buildLog.error("Mattermost notification failed. See Jenkins logs for details.");
+                }
+                buildLog.getLogger().flush();
+                return true;
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Could not write to the log of " + run, e);
+                return false;
+            }
+        }
+    }
+
+    private static JSONObject getBuildStatusJSON(WorkflowRun build, GlobalConfigSnapshot global, PrintStream logger) {
+        MessageBuilder message = new MessageBuilder(build, global)
                 .appendProjectAsAuthor()
                 .appendCommitsAsText()
                 .appendStatus()
@@ -203,6 +343,10 @@ public class MattermostSendStep extends AbstractStepImpl {
         private final String buildServerUrl;
 
         public MessageBuilder(WorkflowRun build) {
+            this(build, GlobalConfigSnapshot.get());
+        }
+
+        public MessageBuilder(WorkflowRun build, GlobalConfigSnapshot global) {
             this.build = build;
 
             json = new JSONObject();
@@ -216,8 +360,7 @@ public class MattermostSendStep extends AbstractStepImpl {
             fields = new JSONArray();
             attachment.put("fields", fields);
 
-            JenkinsLocationConfiguration jenkinsConfig = new JenkinsLocationConfiguration();
-            buildServerUrl = jenkinsConfig.getUrl();
+            buildServerUrl = global.getJenkinsUrl();
 
         }
 
@@ -0,0 +1,32 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the test sources, see the benchmark profile of the pom.
+ * <p>
+ * Benchmark modes and units are declared per class. The GC profiler adds the bytes allocated per operation
+ * ({@code gc.alloc.rate.norm}) to every result.
+ * A single benchmark class can be selected with {@code -Dbenchmark.include=MessageRenderingBenchmark}.
+ */
+public class BenchmarkRunner {
+
+	@Test
+	public void runBenchmarks() throws Exception {
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.include("jenkins\\.plugins\\.mattermost\\..*" + System.getProperty("benchmark.include", "Benchmark"))
+				.warmupIterations(Integer.getInteger("benchmark.warmupIterations", 3))
+				.measurementIterations(Integer.getInteger("benchmark.measurementIterations", 5))
+				.forks(Integer.getInteger("benchmark.forks", 1))
+				.addProfiler(GCProfiler.class)
+				.shouldFailOnError(true)
+				.resultFormat(ResultFormatType.JSON)
+				.result("target/jmh-result.json");
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,69 @@
+package jenkins.plugins.mattermost;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * CPU cost of gzip-compressing rendered notifications of increasing size at several compression levels. The size
+ * reached by each combination is printed during setup, to weigh the saved bytes against the time per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompressionBenchmark {
+
+	@Param({"SMALL", "MEDIUM", "HUGE"})
+	public SyntheticBuilds.Size size;
+
+	@Param({"1", "6", "9"})
+	public int level;
+
+	private byte[] payload;
+	private GzipEncoder encoder;
+
+	@Setup
+	public void setUp() throws Exception {
+		ActiveNotifier activeNotifier = new ActiveNotifier(SyntheticBuilds.notifier(), SyntheticBuilds.listener());
+		payload = activeNotifier.new MessageBuilder(SyntheticBuilds.notifier(), SyntheticBuilds.build(size, 1))
+				.appendProjectAsAuthor()
+				.appendCommitsAsText()
+				.appendStatus()
+				.appendDuration()
+				.appendChanges()
+				.appendTestSummary()
+				.getMattermostJSON().toString().getBytes("UTF-8");
+		encoder = new GzipEncoder(level);
+		int compressed = encoder.encode(payload).length;
+		System.out.println(String.format(Locale.ROOT, "%n%s level %d: %d -> %d bytes (%.1f%%)", size, level,
+				payload.length, compressed, 100.0 * compressed / payload.length));
+	}
+
+	@Benchmark
+	public byte[] gzip() {
+		return encoder.encode(payload);
+	}
+
+	@Benchmark
+	public int deflaterPerRequest() {
+		// what GZIPOutputStream does: a new deflater per request
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(payload);
+			deflater.finish();
+			byte[] buffer = new byte[payload.length + 64];
+			return deflater.deflate(buffer);
+		} finally {
+			deflater.end();
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeliveryDedupStoreTest {
+
+	@Test
+	public void secondAcquireOfSameKeyIsRejected() {
+		DeliveryDedupStore store = new DeliveryDedupStore(16, 1000);
+		assertTrue(store.tryAcquire("job#1/completed", 0));
+		assertFalse(store.tryAcquire("job#1/completed", 10));
+		assertTrue(store.tryAcquire("job#2/completed", 10));
+	}
+
+	@Test
+	public void keyExpiresAfterTimeToLive() {
+		DeliveryDedupStore store = new DeliveryDedupStore(16, 1000);
+		assertTrue(store.tryAcquire("job#1/completed", 0));
+		assertTrue(store.tryAcquire("job#1/completed", 1000));
+	}
+
+	@Test
+	public void releasedKeyCanBeAcquiredAgain() {
+		DeliveryDedupStore store = new DeliveryDedupStore(16, 1000);
+		assertTrue(store.tryAcquire("job#1/started", 0));
+		store.release("job#1/started");
+		assertTrue(store.tryAcquire("job#1/started", 10));
+	}
+
+	@Test
+	public void reacquiringReleasedKeyIsReportedAsRetry() {
+		DeliveryDedupStore store = new DeliveryDedupStore(16, 1000);
+		assertEquals(DeliveryDedupStore.Claim.NEW, store.claim("job#1/started", 0));
+		store.release("job#1/started");
+		assertEquals(DeliveryDedupStore.Claim.RETRY, store.claim("job#1/started", 10));
+		assertEquals(DeliveryDedupStore.Claim.DUPLICATE, store.claim("job#1/started", 20));
+	}
+
+	@Test
+	public void oldestKeyIsEvictedWhenFull() {
+		DeliveryDedupStore store = new DeliveryDedupStore(2, 1000);
+		assertTrue(store.tryAcquire("a", 0));
+		assertTrue(store.tryAcquire("b", 0));
+		assertTrue(store.tryAcquire("c", 0));
+		assertEquals(2, store.size());
+		assertTrue(store.tryAcquire("a", 0));
+		assertFalse(store.tryAcquire("c", 0));
+	}
+
+	@Test
+	public void keysAreDeterministic() {
+		assertEquals(IdempotencyKey.of("folder/job", 42, IdempotencyKey.COMPLETED),
+				IdempotencyKey.of("folder/job", 42, IdempotencyKey.COMPLETED));
+		assertFalse(IdempotencyKey.fingerprint(IdempotencyKey.of("job", 1, IdempotencyKey.STARTED))
+				== IdempotencyKey.fingerprint(IdempotencyKey.of("job", 1, IdempotencyKey.COMPLETED)));
+	}
+}
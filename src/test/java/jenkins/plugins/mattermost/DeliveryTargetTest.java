@@ -0,0 +1,51 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeliveryTargetTest {
+
+	@Test
+	public void roomListIsSplitOnCommasSemicolonsAndSpaces() {
+		List<DeliveryTarget> targets = DeliveryTarget.parse("http://mm.example.com/hooks/x", "#a, bot@#b;#c", "icon");
+		assertEquals(3, targets.size());
+		assertEquals("#a", targets.get(0).getChannel());
+		assertEquals("jenkins", targets.get(0).getUser());
+		assertEquals("bot", targets.get(1).getUser());
+		assertEquals("#b", targets.get(1).getChannel());
+		assertEquals("bot@#b", targets.get(1).getRaw());
+		assertEquals("#c", targets.get(2).getChannel());
+		assertEquals("#a@http://mm.example.com", targets.get(0).toString());
+	}
+
+	@Test
+	public void userAndChannelAreSplitAtTheFirstTwoAts() {
+		List<DeliveryTarget> targets = DeliveryTarget.parse("http://mm.example.com/hooks/x", "user@ @room a@b@c @", "icon");
+		assertEquals(4, targets.size());
+		assertEquals("jenkins", targets.get(0).getUser());
+		assertEquals("user", targets.get(0).getChannel());
+		assertEquals("", targets.get(1).getUser());
+		assertEquals("room", targets.get(1).getChannel());
+		assertEquals("a", targets.get(2).getUser());
+		assertEquals("b", targets.get(2).getChannel());
+		assertEquals("jenkins", targets.get(3).getUser());
+		assertEquals("", targets.get(3).getChannel());
+	}
+
+	@Test
+	public void emptyRoomPostsToDefaultChannel() {
+		List<DeliveryTarget> targets = DeliveryTarget.parse("http://mm.example.com/hooks/x", "", "");
+		assertEquals(1, targets.size());
+		assertEquals("", targets.get(0).getChannel());
+		assertEquals("(default)@http://mm.example.com", targets.get(0).toString());
+	}
+
+	@Test
+	public void targetsAreCachedByConfiguration() {
+		assertSame(DeliveryTarget.parse("http://mm.example.com/hooks/x", "#a,#b", "icon"),
+				DeliveryTarget.parse("http://mm.example.com/hooks/x", "#a,#b", "icon"));
+	}
+}
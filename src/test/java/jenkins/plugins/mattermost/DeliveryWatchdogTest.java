@@ -0,0 +1,65 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DeliveryWatchdogTest {
+
+	private static final long WINDOW = TimeUnit.MINUTES.toNanos(5);
+	private static final long SLO = TimeUnit.SECONDS.toNanos(60);
+
+	@Test
+	public void oldUndeliveredNotificationBreachesSloAndAlertsOnce() {
+		DeliveryWatchdog watchdog = new DeliveryWatchdog(WINDOW);
+		long start = System.nanoTime();
+		long id = watchdog.opened(start);
+
+		assertFalse(watchdog.check(start + SLO / 2, SLO));
+		assertFalse(watchdog.isBreached());
+
+		assertTrue("first breach should alert", watchdog.check(start + 2 * SLO, SLO));
+		assertTrue(watchdog.isBreached());
+		assertTrue(watchdog.getSummary(), watchdog.getSummary().startsWith("oldest undelivered notification is 120 s old"));
+		assertFalse("an ongoing breach should not alert again", watchdog.check(start + 3 * SLO, SLO));
+
+		watchdog.delivered(id, 3 * SLO);
+		assertEquals(0, watchdog.getInProgress());
+		// the lag stays in the p99 until both windows have rolled over
+		watchdog.check(start + 3 * SLO, SLO);
+		assertTrue(watchdog.isBreached());
+		watchdog.check(start + 3 * SLO + WINDOW, SLO);
+		assertFalse(watchdog.check(start + 3 * SLO + 2 * WINDOW, SLO));
+		assertFalse(watchdog.isBreached());
+
+		watchdog.opened(start + 3 * SLO + 2 * WINDOW);
+		assertTrue("a new breach should alert again", watchdog.check(start + 5 * SLO + 2 * WINDOW, SLO));
+	}
+
+	@Test
+	public void slowDeliveriesBreachThroughP99() {
+		DeliveryWatchdog watchdog = new DeliveryWatchdog(WINDOW);
+		long now = System.nanoTime();
+		for (int i = 0; i < 100; i++) {
+			watchdog.delivered(watchdog.opened(now), i < 95 ? TimeUnit.SECONDS.toNanos(1) : 2 * SLO);
+		}
+		assertEquals(0, watchdog.getOldestInProgressNanos(now));
+		assertTrue(watchdog.check(now, SLO));
+	}
+
+	@Test
+	public void failedAndDiscardedNotificationsDoNotCountAsLag() {
+		DeliveryWatchdog watchdog = new DeliveryWatchdog(WINDOW);
+		long now = System.nanoTime();
+		watchdog.failed(watchdog.opened(now));
+		watchdog.discarded(watchdog.opened(now));
+		watchdog.delivered(watchdog.opened(now), TimeUnit.SECONDS.toNanos(1));
+		assertEquals(0, watchdog.getInProgress());
+		assertEquals(1, watchdog.getFailures());
+		assertFalse(watchdog.check(now + 2 * SLO, SLO));
+		assertTrue(watchdog.getSummary(), watchdog.getSummary().endsWith("(0 in progress, 1 failed)"));
+		assertTrue(watchdog.getLagP99Nanos() <= TimeUnit.SECONDS.toNanos(2));
+	}
+}
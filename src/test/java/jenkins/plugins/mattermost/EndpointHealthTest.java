@@ -0,0 +1,54 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EndpointHealthTest {
+
+	private MattermostStubServer server;
+	private EndpointHealth health;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MattermostStubServer().start();
+		health = new EndpointHealth();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void pingMarksEndpointUpWithoutPosting() {
+		server.setRecordRequests(true);
+		server.respond("GET /api/v4/system/ping", 200, "{\"status\":\"OK\"}");
+		String endpoint = server.getUrl() + "/hooks/abc";
+
+		assertEquals(EndpointHealth.Status.UNKNOWN, health.getStatus(endpoint).getStatus());
+		assertEquals(EndpointHealth.Status.UP, health.check(endpoint).getStatus());
+		assertEquals(EndpointHealth.Status.UP, health.getStatus(endpoint).getStatus());
+		assertEquals(1, server.getRequests().size());
+		assertEquals("/api/v4/system/ping", server.getRequests().get(0).path);
+	}
+
+	@Test
+	public void failedPingMarksEndpointDown() {
+		server.respond("GET /api/v4/system/ping", 500, "");
+		String endpoint = server.getUrl() + "/hooks/abc";
+
+		assertEquals(EndpointHealth.Status.DOWN, health.check(endpoint).getStatus());
+		assertFalse(health.isReachable(endpoint));
+	}
+
+	@Test
+	public void unreachableServerIsDown() {
+		// nothing listens on port 1
+		String endpoint = "http://127.0.0.1:1/hooks/abc";
+
+		assertEquals(EndpointHealth.Status.DOWN, health.check(endpoint).getStatus());
+	}
+}
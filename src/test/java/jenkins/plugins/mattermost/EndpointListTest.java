@@ -0,0 +1,42 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class EndpointListTest {
+
+	@Test
+	public void endpointsAreSplitOnCommasAndWhitespace() {
+		EndpointList endpoints = EndpointList.parse("http://a/hooks/x, http://b/hooks/x\nhttp://c/hooks/x");
+		assertEquals(Arrays.asList("http://a/hooks/x", "http://b/hooks/x", "http://c/hooks/x"), endpoints.getEndpoints());
+		assertEquals("http://a/hooks/x", endpoints.getPrimary());
+		assertSame(endpoints, EndpointList.parse("http://a/hooks/x, http://b/hooks/x\nhttp://c/hooks/x"));
+	}
+
+	@Test
+	public void singleEndpointIsKeptAsIs() {
+		EndpointList endpoints = EndpointList.parse("http://a/hooks/x");
+		assertEquals(1, endpoints.size());
+		assertArrayEquals(new int[]{0}, endpoints.order(new EndpointHealth()));
+		assertNull(EndpointList.parse(null).getPrimary());
+	}
+
+	@Test
+	public void healthyEndpointsComeFirstFastestFirst() {
+		EndpointHealth health = new EndpointHealth();
+		EndpointList endpoints = EndpointList.parse("http://a/hooks/x http://b/hooks/x http://c/hooks/x http://d/hooks/x");
+		health.recordUnreachable("http://a/hooks/x", "Connection refused");
+		health.recordReachable("http://b/hooks/x", 50000000L);
+		health.recordReachable("http://c/hooks/x", 10000000L);
+		assertArrayEquals(new int[]{2, 1, 3, 0}, endpoints.order(health));
+	}
+
+	@Test
+	public void unknownEndpointsKeepConfiguredOrder() {
+		EndpointList endpoints = EndpointList.parse("http://a/hooks/y http://b/hooks/y");
+		assertArrayEquals(new int[]{0, 1}, endpoints.order(new EndpointHealth()));
+	}
+}
@@ -0,0 +1,24 @@
+package jenkins.plugins.mattermost;
+
+/**
+ * Publishes global settings for tests outside this package, which cannot create snapshots themselves.
+ */
+public final class GlobalConfigSnapshotStub {
+
+	private GlobalConfigSnapshotStub() {
+	}
+
+	/**
+	 * @return the snapshot that was current before, to restore it after the test
+	 */
+	public static GlobalConfigSnapshot publish(String endpoint, String room, String icon) {
+		GlobalConfigSnapshot previous = GlobalConfigSnapshot.get();
+		GlobalConfigSnapshot.publish(new GlobalConfigSnapshot(endpoint, room, icon, null, null, null, false, 0, false,
+				false, null, 0, null, false, null));
+		return previous;
+	}
+
+	public static void restore(GlobalConfigSnapshot snapshot) {
+		GlobalConfigSnapshot.publish(snapshot);
+	}
+}
@@ -0,0 +1,43 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GlobalConfigSnapshotTest {
+
+	private final GlobalConfigSnapshot original = GlobalConfigSnapshot.get();
+
+	@After
+	public void restore() {
+		GlobalConfigSnapshot.publish(original);
+	}
+
+	@Test
+	public void buildServerUrlFallsBackToJenkinsUrl() {
+		GlobalConfigSnapshot snapshot = new GlobalConfigSnapshot("http://mm/hooks/x", "#a", "icon", "", "jenkins",
+				null, false, 0, false, false, null, 0, null, false, "http://jenkins/");
+		assertEquals("http://jenkins/", snapshot.getBuildServerUrl());
+		assertEquals("", snapshot.getBotToken());
+		assertFalse(snapshot.isPostThroughBot());
+		assertEquals(MattermostNotifier.DescriptorImpl.DEFAULT_THREAD_REPLY_INTERVAL, snapshot.getThreadReplyInterval());
+		assertEquals(MattermostNotifier.DescriptorImpl.DEFAULT_DELIVERY_SLO_SECONDS, snapshot.getDeliverySloSeconds());
+		assertEquals(TransportChoice.COMMONS_HTTPCLIENT, snapshot.getTransport());
+		assertFalse(snapshot.isMentionCommitAuthors());
+	}
+
+	@Test
+	public void publishedSnapshotIsReadByEveryone() {
+		GlobalConfigSnapshot snapshot = new GlobalConfigSnapshot("http://mm/hooks/x", "#a", "icon", "http://build/",
+				"jenkins", null, true, 5, true, false, TransportChoice.HTTPCLIENT_4, 60, "http://mm/hooks/fallback", true,
+				"http://jenkins/");
+		GlobalConfigSnapshot.publish(snapshot);
+		assertSame(snapshot, GlobalConfigSnapshot.get());
+		assertEquals("http://build/", GlobalConfigSnapshot.get().getBuildServerUrl());
+		assertTrue(GlobalConfigSnapshot.get().isTimingTrace());
+		assertTrue(GlobalConfigSnapshot.get().isPostThroughBot());
+		assertEquals(60, GlobalConfigSnapshot.get().getDeliverySloSeconds());
+		assertTrue(GlobalConfigSnapshot.get().isMentionCommitAuthors());
+	}
+}
@@ -0,0 +1,105 @@
+package jenkins.plugins.mattermost;
+
+import org.apache.commons.lang.StringUtils;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class GzipEncoderTest {
+
+	private MattermostStubServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MattermostStubServer().start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void encodedBytesAreValidGzip() throws IOException {
+		String text = largeText(100000);
+		assertEquals(text, gunzip(GzipEncoder.gzip(text)));
+		// the reused deflater must not carry state over
+		assertEquals("short", gunzip(GzipEncoder.gzip("short")));
+		assertEquals("", gunzip(GzipEncoder.gzip("")));
+	}
+
+	@Test
+	public void largePayloadIsPostedCompressed() throws IOException {
+		StandardMattermostService service = new StandardMattermostService(server.getUrl() + "/hooks/gzip", "#builds", "");
+		service.setCompressionThreshold(1024);
+		String message = largeText(20000);
+
+		assertTrue(service.publish(message, "danger"));
+
+		MattermostStubServer.Request request = server.getRequests().get(0);
+		assertEquals("gzip", request.contentEncoding);
+		assertTrue(request.body.length < message.length() / 2);
+		JSONObject json = new JSONObject(gunzip(request.body));
+		assertEquals("#builds", json.getString("channel"));
+		assertEquals(message, json.getJSONArray("attachments").getJSONObject(0).getString("text"));
+	}
+
+	@Test
+	public void thresholdCountsBytesNotCharacters() throws IOException {
+		StandardMattermostService service = new StandardMattermostService(server.getUrl() + "/hooks/gzip", "#builds", "");
+		service.setCompressionThreshold(1024);
+		// 600 characters, but 1200 bytes in UTF-8
+		String message = StringUtils.repeat("\u00fc", 600);
+
+		assertTrue(service.publish(message, "danger"));
+
+		assertEquals("gzip", server.getRequests().get(0).contentEncoding);
+	}
+
+	@Test
+	public void utf8LengthMatchesEncoding() throws IOException {
+		for (String text : new String[]{"", "ascii", "gr\u00fc\u00dfe", "\u20ac 5", "\ud83d\ude80 launch", "lone \ud83d"}) {
+			assertEquals(text, text.getBytes("UTF-8").length, GzipEncoder.utf8Length(text));
+		}
+	}
+
+	@Test
+	public void smallPayloadIsPostedAsForm() throws IOException {
+		StandardMattermostService service = new StandardMattermostService(server.getUrl() + "/hooks/gzip", "#builds", "");
+		service.setCompressionThreshold(1024);
+
+		assertTrue(service.publish("Build #1 succeeded", "good"));
+
+		MattermostStubServer.Request request = server.getRequests().get(0);
+		assertNull(request.contentEncoding);
+		assertTrue(request.getBodyAsString().startsWith("payload="));
+	}
+
+	static String largeText(int length) {
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; text.length() < length; i++) {
+			text.append("- Fix flaky test in module-").append(i % 37).append(" (jdoe)\n");
+		}
+		return text.toString();
+	}
+
+	private static String gunzip(byte[] body) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(body));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return new String(out.toByteArray(), "UTF-8");
+	}
+}
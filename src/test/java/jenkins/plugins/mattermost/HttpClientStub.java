@@ -4,15 +4,21 @@ import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpStatus;
 
+import java.io.IOException;
+
 public class HttpClientStub extends HttpClient {
 
 	private int numberOfCallsToExecuteMethod;
 	private int httpStatus;
 	private boolean failAlternateResponses = false;
+	private IOException failure;
 
 	@Override
-	public int executeMethod(HttpMethod httpMethod) {
+	public int executeMethod(HttpMethod httpMethod) throws IOException {
 		numberOfCallsToExecuteMethod++;
+		if (failure != null) {
+			throw failure;
+		}
 		if (failAlternateResponses && (numberOfCallsToExecuteMethod % 2 == 0)) {
 			return HttpStatus.SC_NOT_FOUND;
 		} else {
@@ -28,6 +34,10 @@ public class HttpClientStub extends HttpClient {
 		this.httpStatus = httpStatus;
 	}
 
+	public void setFailure(IOException failure) {
+		this.failure = failure;
+	}
+
 	public void setFailAlternateResponses(boolean failAlternateResponses) {
 		this.failAlternateResponses = failAlternateResponses;
 	}
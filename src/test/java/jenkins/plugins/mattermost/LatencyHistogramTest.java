@@ -0,0 +1,37 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketBoundsRoundTrip() {
+		for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE}) {
+			int index = LatencyHistogram.index(value);
+			assertTrue(LatencyHistogram.lowerBound(index) <= value);
+			assertTrue(value - LatencyHistogram.lowerBound(index) <= value / 8);
+		}
+	}
+
+	@Test
+	public void percentilesAreWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000000L, histogram.getMax());
+		long p50 = histogram.getPercentile(0.5);
+		assertTrue("p50 was " + p50, p50 >= 500000L && p50 <= 500000L * 9 / 8);
+		assertEquals(1000000L, histogram.getPercentile(1));
+	}
+
+	@Test
+	public void emptyHistogramReportsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(0.99));
+		assertEquals("0.0", histogram.getPercentileMillis(0.99));
+	}
+}
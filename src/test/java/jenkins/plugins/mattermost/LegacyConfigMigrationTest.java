@@ -0,0 +1,106 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.AbstractProject;
+import hudson.model.FreeStyleProject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LegacyConfigMigrationTest {
+
+	@Test
+	public void allJobsAreMigratedInBatches() throws IOException {
+		List<AbstractProject<?, ?>> projects = projects(25);
+		RecordingMigration migration = new RecordingMigration(legacy(projects), null);
+		assertEquals(25, migration.migrate(projects));
+		assertEquals(25, migration.migrated.size());
+		// builds stay blocked while a job is migrated and may start afterwards
+		assertEquals(25, migration.blockedWhileMigrated.size());
+		assertFalse(migration.isPending("job-0"));
+	}
+
+	@Test
+	public void restartResumesWithTheJobsNotDoneYet() throws IOException {
+		List<AbstractProject<?, ?>> projects = projects(10);
+		Set<String> legacy = legacy(projects);
+		new RecordingMigration(legacy, "job-3").migrate(projects);
+
+		RecordingMigration resumed = new RecordingMigration(legacy, null);
+		assertEquals(1, resumed.migrate(projects));
+		assertEquals(Collections.singletonList("job-3"), resumed.migrated);
+	}
+
+	@Test
+	public void jobsAddedLaterAreMigrated() throws IOException {
+		List<AbstractProject<?, ?>> projects = projects(5);
+		Set<String> legacy = legacy(projects);
+		new RecordingMigration(legacy, null).migrate(projects);
+
+		projects = projects(6);
+		legacy.add("job-5");
+		RecordingMigration again = new RecordingMigration(legacy, null);
+		assertEquals(1, again.migrate(projects));
+		assertEquals(Collections.singletonList("job-5"), again.migrated);
+	}
+
+	private static List<AbstractProject<?, ?>> projects(int count) {
+		List<AbstractProject<?, ?>> projects = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			FreeStyleProject project = mock(FreeStyleProject.class);
+			when(project.getFullName()).thenReturn("job-" + i);
+			projects.add(project);
+		}
+		return projects;
+	}
+
+	private static Set<String> legacy(List<AbstractProject<?, ?>> projects) {
+		Set<String> legacy = Collections.synchronizedSet(new HashSet<String>());
+		for (AbstractProject<?, ?> project : projects) {
+			legacy.add(project.getFullName());
+		}
+		return legacy;
+	}
+
+	/**
+	 * Keeps the names of the jobs with legacy settings in a set instead of in job configurations.
+	 */
+	private static class RecordingMigration extends LegacyConfigMigration {
+
+		private final List<String> migrated = Collections.synchronizedList(new ArrayList<String>());
+		private final List<String> blockedWhileMigrated = Collections.synchronizedList(new ArrayList<String>());
+		private final Set<String> legacy;
+		private final String failing;
+
+		RecordingMigration(Set<String> legacy, String failing) {
+			super(3, 4);
+			this.legacy = legacy;
+			this.failing = failing;
+		}
+
+		@Override
+		boolean needsMigration(AbstractProject<?, ?> project) {
+			return legacy.contains(project.getFullName());
+		}
+
+		@Override
+		void migrate(AbstractProject<?, ?> project) throws IOException {
+			if (isPending(project.getFullName())) {
+				blockedWhileMigrated.add(project.getFullName());
+			}
+			if (project.getFullName().equals(failing)) {
+				throw new IOException("disk full");
+			}
+			migrated.add(project.getFullName());
+			legacy.remove(project.getFullName());
+		}
+	}
+}
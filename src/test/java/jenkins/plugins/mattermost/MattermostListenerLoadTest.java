@@ -0,0 +1,196 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleProject;
+import hudson.model.StreamBuildListener;
+import hudson.scm.ChangeLogSet;
+import hudson.util.NullStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Build storm: many builds completing at a steady rate within half a minute, each firing
+ * {@link MattermostListener#onCompleted}. Freestyle notifications are posted on the completing executor, not through
+ * {@link NotificationDispatcher}, so executor blocking includes the delivery. Completions that arrive while all
+ * executors are busy notifying wait in the executors' queue; its depth is sampled during the storm.
+ * <p>
+ * Only runs with {@code mvn -P load-test test}. Scale and thresholds can be tuned with the {@code loadtest.*}
+ * system properties below; a threshold violation fails the suite.
+ */
+public class MattermostListenerLoadTest {
+
+	private static final int BUILDS = Integer.getInteger("loadtest.builds", 5000);
+	private static final int PROJECTS = Integer.getInteger("loadtest.projects", 20);
+	/** concurrently completing builds, i.e. busy executors */
+	private static final int EXECUTORS = Integer.getInteger("loadtest.executors", 32);
+	/** time over which the builds complete */
+	private static final long STORM_SECONDS = Long.getLong("loadtest.stormSeconds", 30);
+
+	private static final long MAX_DURATION_SECONDS = Long.getLong("loadtest.maxDurationSeconds", 60);
+	private static final long MAX_BLOCKING_P99_MILLIS = Long.getLong("loadtest.maxBlockingP99Millis", 250);
+	private static final long MAX_DELIVERY_LAG_P99_MILLIS = Long.getLong("loadtest.maxDeliveryLagP99Millis", 500);
+	private static final int MAX_QUEUE_DEPTH = Integer.getInteger("loadtest.maxQueueDepth", 500);
+	private static final long MAX_HEAP_GROWTH_MB = Long.getLong("loadtest.maxHeapGrowthMb", 256);
+
+	private static final Pattern BUILD_NUMBER = Pattern.compile("#(\\d+)\"");
+
+	@Rule
+	public JenkinsRule jenkinsRule = new JenkinsRule();
+
+	private MattermostStubServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MattermostStubServer().start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void buildStorm() throws Exception {
+		ChangeLogSet changeSet = SyntheticBuilds.changeSet(SyntheticBuilds.Size.SMALL);
+		final List<AbstractBuild> builds = new ArrayList<>(BUILDS);
+		List<FreeStyleProject> projects = new ArrayList<>(PROJECTS);
+		for (int i = 0; i < PROJECTS; i++) {
+			FreeStyleProject project = jenkinsRule.createFreeStyleProject("storm-" + i);
+			MattermostNotifier notifier = new MattermostNotifier(server.getUrl() + "/hooks/storm");
+			notifier.setRoom("#storm-" + i);
+			notifier.setNotifySuccess(true);
+			notifier.setCommitInfoChoice(CommitInfoChoice.AUTHORS_AND_TITLES);
+			project.getPublishersList().add(notifier);
+			projects.add(project);
+		}
+		for (int number = 1; number <= BUILDS; number++) {
+			builds.add(SyntheticBuilds.build(projects.get(number % PROJECTS), changeSet, number));
+		}
+
+		final MattermostListener mattermostListener = new MattermostListener();
+		final BuildListener buildListener = new StreamBuildListener(new NullStream());
+		final long[] firedNanos = new long[BUILDS + 1];
+		final long[] blockingNanos = new long[BUILDS];
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		System.gc();
+		long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+		final ThreadPoolExecutor executors = new ThreadPoolExecutor(EXECUTORS, EXECUTORS, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		final AtomicLong maxHeap = new AtomicLong(heapBefore);
+		final AtomicInteger maxQueueDepth = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(BUILDS);
+		Thread sampler = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+				while (done.getCount() > 0) {
+					maxHeap.set(Math.max(maxHeap.get(), memory.getHeapMemoryUsage().getUsed()));
+					maxQueueDepth.set(Math.max(maxQueueDepth.get(), executors.getQueue().size()));
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "load test sampler");
+		sampler.setDaemon(true);
+
+		final AtomicInteger next = new AtomicInteger();
+		long start = System.nanoTime();
+		sampler.start();
+		for (int i = 0; i < BUILDS; i++) {
+			long wait = start + TimeUnit.SECONDS.toNanos(STORM_SECONDS) * i / BUILDS - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			executors.execute(new Runnable() {
+				@Override
+				public void run() {
+					int index = next.getAndIncrement();
+					AbstractBuild build = builds.get(index);
+					long fired = System.nanoTime();
+					firedNanos[build.getNumber()] = fired;
+					try {
+						mattermostListener.onCompleted(build, buildListener);
+					} finally {
+						blockingNanos[index] = System.nanoTime() - fired;
+						done.countDown();
+					}
+				}
+			});
+		}
+		assertTrue("build storm did not finish in time", done.await(MAX_DURATION_SECONDS * 2, TimeUnit.SECONDS));
+		executors.shutdown();
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(MAX_DURATION_SECONDS);
+		while (server.getRequests().size() < BUILDS && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		long duration = System.nanoTime() - start;
+		sampler.interrupt();
+		System.gc();
+		long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+		List<MattermostStubServer.Request> requests = server.getRequests();
+		long[] lagNanos = new long[requests.size()];
+		for (int i = 0; i < requests.size(); i++) {
+			MattermostStubServer.Request request = requests.get(i);
+			Matcher matcher = BUILD_NUMBER.matcher(URLDecoder.decode(request.getBodyAsString(), "UTF-8"));
+			assertTrue("no build number in " + request.getBodyAsString(), matcher.find());
+			lagNanos[i] = request.receivedNanos - firedNanos[Integer.parseInt(matcher.group(1))];
+		}
+
+		long blockingP99 = percentileMillis(blockingNanos, 0.99);
+		long lagP99 = percentileMillis(lagNanos, 0.99);
+		long heapGrowthMb = (heapAfter - heapBefore) / (1024 * 1024);
+		System.out.printf("Build storm: %d builds on %d executors in %d ms%n", BUILDS, EXECUTORS, TimeUnit.NANOSECONDS.toMillis(duration));
+		System.out.printf("  executor blocking: p50=%d ms p99=%d ms max=%d ms%n",
+				percentileMillis(blockingNanos, 0.5), blockingP99, percentileMillis(blockingNanos, 1));
+		System.out.printf("  delivery lag: p50=%d ms p99=%d ms max=%d ms (%d delivered)%n",
+				percentileMillis(lagNanos, 0.5), lagP99, percentileMillis(lagNanos, 1), requests.size());
+		System.out.printf("  queue depth: max=%d completions waiting for an executor%n", maxQueueDepth.get());
+		System.out.printf("  heap growth: %d MB (peak %d MB)%n", heapGrowthMb, (maxHeap.get() - heapBefore) / (1024 * 1024));
+
+		assertEquals("every build should be notified exactly once", BUILDS, requests.size());
+		assertTrue("build storm took " + TimeUnit.NANOSECONDS.toSeconds(duration) + " s",
+				duration <= TimeUnit.SECONDS.toNanos(MAX_DURATION_SECONDS));
+		assertTrue("executor blocking p99 " + blockingP99 + " ms", blockingP99 <= MAX_BLOCKING_P99_MILLIS);
+		assertTrue("delivery lag p99 " + lagP99 + " ms", lagP99 <= MAX_DELIVERY_LAG_P99_MILLIS);
+		assertTrue("queue depth reached " + maxQueueDepth.get(), maxQueueDepth.get() <= MAX_QUEUE_DEPTH);
+		assertTrue("heap grew by " + heapGrowthMb + " MB", heapGrowthMb <= MAX_HEAP_GROWTH_MB);
+	}
+
+	private static long percentileMillis(long[] nanos, double percentile) {
+		if (nanos.length == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(nanos, nanos.length);
+		Arrays.sort(sorted);
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+		return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+	}
+}
@@ -14,19 +14,19 @@ public class MattermostNotifierStub extends MattermostNotifier {
 
 	public static class DescriptorImplStub extends MattermostNotifier.DescriptorImpl {
 
-		private MattermostService mattermostService;
+		private EndpointHealth endpointHealth;
 
 		@Override
 		public synchronized void load() {
 		}
 
 		@Override
-		MattermostService getMattermostService(final String host, final String room, final String icon) {
-			return mattermostService;
+		EndpointHealth getEndpointHealth() {
+			return endpointHealth;
 		}
 
-		public void setMattermostService(MattermostService mattermostService) {
-			this.mattermostService = mattermostService;
+		public void setEndpointHealth(EndpointHealth endpointHealth) {
+			this.endpointHealth = endpointHealth;
 		}
 	}
 }
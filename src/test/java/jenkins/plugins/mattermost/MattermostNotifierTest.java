@@ -3,7 +3,6 @@ package jenkins.plugins.mattermost;
 import hudson.model.Descriptor;
 import hudson.util.FormValidation;
 import junit.framework.TestCase;
-import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.Before;
 import org.junit.runner.RunWith;
@@ -16,8 +15,8 @@ import java.util.Collection;
 public class MattermostNotifierTest extends TestCase {
 
 	private MattermostNotifierStub.DescriptorImplStub descriptor;
-	private MattermostServiceStub mattermostServiceStub;
-	private boolean response;
+	private EndpointHealthStub endpointHealthStub;
+	private EndpointHealth.Status response;
 	private FormValidation.Kind expectedResult;
 
 	@Before
@@ -27,8 +26,8 @@ public class MattermostNotifierTest extends TestCase {
 		descriptor = new MattermostNotifierStub.DescriptorImplStub();
 	}
 
-	public MattermostNotifierTest(MattermostServiceStub mattermostServiceStub, boolean response, FormValidation.Kind expectedResult) {
-		this.mattermostServiceStub = mattermostServiceStub;
+	public MattermostNotifierTest(EndpointHealthStub endpointHealthStub, EndpointHealth.Status response, FormValidation.Kind expectedResult) {
+		this.endpointHealthStub = endpointHealthStub;
 		this.response = response;
 		this.expectedResult = expectedResult;
 	}
@@ -36,18 +35,18 @@ public class MattermostNotifierTest extends TestCase {
 	@Parameterized.Parameters
 	public static Collection businessTypeKeys() {
 		return Arrays.asList(new Object[][]{
-			{new MattermostServiceStub(), true, FormValidation.Kind.OK},
-				{new MattermostServiceStub(), false, FormValidation.Kind.ERROR},
-				{null, false, FormValidation.Kind.ERROR}
+			{new EndpointHealthStub(), EndpointHealth.Status.UP, FormValidation.Kind.OK},
+				{new EndpointHealthStub(), EndpointHealth.Status.DOWN, FormValidation.Kind.ERROR},
+				{null, null, FormValidation.Kind.ERROR}
 		});
 	}
 
 	@Test
 	public void testDoTestConnection() {
-		if (mattermostServiceStub != null) {
-			mattermostServiceStub.setResponse(response);
+		if (endpointHealthStub != null) {
+			endpointHealthStub.setResponse(response);
 		}
-		descriptor.setMattermostService(mattermostServiceStub);
+		descriptor.setEndpointHealth(endpointHealthStub);
 		try {
 			FormValidation result = descriptor.doTestConnection("host", "room", "", "buildServerUrl");
 			assertEquals(result.kind, expectedResult);
@@ -57,26 +56,16 @@ public class MattermostNotifierTest extends TestCase {
 		}
 	}
 
-	public static class MattermostServiceStub implements MattermostService {
+	public static class EndpointHealthStub extends EndpointHealth {
 
-		private boolean response;
+		private EndpointHealth.Status response;
 
 		@Override
-		public boolean publish(String message) {
-			return response;
+		public EndpointStatus check(String endpoint) {
+			return new EndpointStatus(response, 0, "stubbed");
 		}
 
-		@Override
-		public boolean publish(String message, String color) {
-			return response;
-		}
-
-		@Override
-		public boolean publish(JSONObject json, String color) {
-			return response;
-		}
-
-		void setResponse(boolean response) {
+		void setResponse(EndpointHealth.Status response) {
 			this.response = response;
 		}
 	}
@@ -0,0 +1,172 @@
+package jenkins.plugins.mattermost;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server imitating a Mattermost server, for tests and benchmarks that need real HTTP round trips.
+ */
+public class MattermostStubServer {
+
+	private final HttpServer server;
+	private final Map<String, Response> responses = Collections.synchronizedMap(new LinkedHashMap<String, Response>());
+	private final List<Request> requests = Collections.synchronizedList(new ArrayList<Request>());
+	private volatile long latencyMillis;
+	private volatile int defaultStatus = 200;
+	private volatile boolean recordRequests = true;
+
+	public MattermostStubServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				MattermostStubServer.this.handle(exchange);
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+	}
+
+	public MattermostStubServer start() {
+		server.start();
+		return this;
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	public String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Answers requests whose method and path start with the given prefix, e.g. {@code "PUT /api/v4/posts/"}.
+	 */
+	public void respond(String methodAndPathPrefix, int status, String body) {
+		responses.put(methodAndPathPrefix, new Response(status, body, null));
+	}
+
+	/**
+	 * Answers requests whose method and path start with the given prefix with a body depending on the request.
+	 */
+	public void respond(String methodAndPathPrefix, int status, Responder responder) {
+		responses.put(methodAndPathPrefix, new Response(status, null, responder));
+	}
+
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	public void setDefaultStatus(int defaultStatus) {
+		this.defaultStatus = defaultStatus;
+	}
+
+	public void setRecordRequests(boolean recordRequests) {
+		this.recordRequests = recordRequests;
+	}
+
+	public List<Request> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<>(requests);
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			long receivedNanos = System.nanoTime();
+			String method = exchange.getRequestMethod();
+			String path = exchange.getRequestURI().getPath();
+			byte[] body = readFully(exchange.getRequestBody());
+			Request request = new Request(method, path, exchange.getRequestHeaders().getFirst("Authorization"),
+					exchange.getRequestHeaders().getFirst("Content-Encoding"), body, receivedNanos);
+			if (recordRequests) {
+				requests.add(request);
+			}
+			if (latencyMillis > 0) {
+				Thread.sleep(latencyMillis);
+			}
+			Response response = new Response(defaultStatus, "ok", null);
+			synchronized (responses) {
+				for (Map.Entry<String, Response> entry : responses.entrySet()) {
+					if ((method + " " + path).startsWith(entry.getKey())) {
+						response = entry.getValue();
+					}
+				}
+			}
+			String responseText = response.responder != null ? response.responder.respond(request) : response.body;
+			byte[] responseBody = responseText.getBytes("UTF-8");
+			exchange.sendResponseHeaders(response.status, responseBody.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(responseBody);
+			out.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Computes the body of a response.
+	 */
+	public interface Responder {
+		String respond(Request request) throws IOException;
+	}
+
+	private static class Response {
+		private final int status;
+		private final String body;
+		private final Responder responder;
+
+		Response(int status, String body, Responder responder) {
+			this.status = status;
+			this.body = body;
+			this.responder = responder;
+		}
+	}
+
+	public static class Request {
+		public final String method;
+		public final String path;
+		public final String authorization;
+		public final String contentEncoding;
+		public final byte[] body;
+		/** {@link System#nanoTime()} when the request arrived */
+		public final long receivedNanos;
+
+		Request(String method, String path, String authorization, String contentEncoding, byte[] body, long receivedNanos) {
+			this.method = method;
+			this.path = path;
+			this.authorization = authorization;
+			this.contentEncoding = contentEncoding;
+			this.body = body;
+		}
+
+		public String getBodyAsString() throws IOException {
+			return new String(body, "UTF-8");
+		}
+	}
+}
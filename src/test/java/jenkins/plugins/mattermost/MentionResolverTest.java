@@ -0,0 +1,123 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MentionResolverTest {
+
+	private MattermostStubServer server;
+	private RestMattermostService service;
+	private MentionResolver resolver;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MattermostStubServer().start();
+		// like Mattermost, only the requested users are returned, emails only where the bot may see them
+		final Map<String, JSONObject> directory = new HashMap<>();
+		directory.put("jane.doe", user("jane.doe", "jane.doe@example.com"));
+		directory.put("bob", user("bob", ""));
+		directory.put("carol.smith", user("carol.smith", "carol.smith@example.com"));
+		directory.put("dave", user("dave", "dave@example.com"));
+		server.respond("POST /api/v4/users/usernames", 200, new MattermostStubServer.Responder() {
+			@Override
+			public String respond(MattermostStubServer.Request request) throws IOException {
+				JSONArray requested = new JSONArray(request.getBodyAsString());
+				JSONArray users = new JSONArray();
+				for (int i = 0; i < requested.length(); i++) {
+					JSONObject user = directory.get(requested.getString(i));
+					if (user != null) {
+						users.put(user);
+					}
+				}
+				return users.toString();
+			}
+		});
+		service = new RestMattermostService(server.getUrl(), "team/builds", "", "token");
+		resolver = new MentionResolver(new TtlCache<String, String>(16, 60000));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void authorsAreResolvedWithOneRequest() throws Exception {
+		MentionResolver.Author jane = new MentionResolver.Author("jane", "Jane.Doe@example.com");
+		MentionResolver.Author dave = new MentionResolver.Author("Dave", "dave@example.com");
+		MentionResolver.Author carol = new MentionResolver.Author("Carol Smith", "carol.smith@example.com");
+		MentionResolver.Author stranger = new MentionResolver.Author("stranger", "stranger@example.com");
+
+		Map<MentionResolver.Author, String> mentions = resolver.resolve(service, Arrays.asList(jane, dave, carol, stranger, dave));
+		assertEquals("jane.doe", mentions.get(jane));
+		assertEquals("dave", mentions.get(dave));
+		assertEquals("carol.smith", mentions.get(carol));
+		assertNull(mentions.get(stranger));
+		assertEquals(3, mentions.size());
+
+		List<MattermostStubServer.Request> requests = server.getRequests();
+		assertEquals(1, requests.size());
+		assertEquals("Bearer token", requests.get(0).authorization);
+		JSONArray usernames = new JSONArray(requests.get(0).getBodyAsString());
+		assertEquals("[\"jane\",\"jane.doe\",\"dave\",\"carol.smith\",\"stranger\"]", usernames.toString());
+	}
+
+	@Test
+	public void emailLocalPartOfAnotherUserIsNotMentioned() {
+		// bob's email is hidden from the bot, so nothing shows that bob@other.com belongs to him
+		MentionResolver.Author dave = new MentionResolver.Author("dave", "bob@other.com");
+		MentionResolver.Author jane = new MentionResolver.Author("jane", "jane.doe@other.com");
+
+		Map<MentionResolver.Author, String> mentions = resolver.resolve(service, Arrays.asList(dave, jane));
+		assertTrue(mentions.isEmpty());
+	}
+
+	@Test
+	public void jenkinsIdOfAnotherUserIsNotMentioned() {
+		MentionResolver.Author bob = new MentionResolver.Author("bob", "robert@other.com");
+		MentionResolver.Author carol = new MentionResolver.Author("carol.smith", "carol@other.com");
+		MentionResolver.Author withoutEmail = new MentionResolver.Author("dave", null);
+
+		Map<MentionResolver.Author, String> mentions = resolver.resolve(service, Arrays.asList(bob, carol, withoutEmail));
+		assertTrue(mentions.isEmpty());
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	public void resolvedAndUnknownAuthorsAreCached() {
+		MentionResolver.Author dave = new MentionResolver.Author("dave", "dave@example.com");
+		MentionResolver.Author stranger = new MentionResolver.Author("stranger", "stranger@example.com");
+		resolver.resolve(service, Arrays.asList(dave, stranger));
+		Map<MentionResolver.Author, String> mentions = resolver.resolve(service, Arrays.asList(dave, stranger));
+		assertEquals("dave", mentions.get(dave));
+		assertEquals(1, mentions.size());
+		assertEquals(1, server.getRequests().size());
+	}
+
+	@Test
+	public void failedLookupIsNotCached() {
+		server.respond("POST /api/v4/users/usernames", 500, "{}");
+		MentionResolver.Author dave = new MentionResolver.Author("dave", "dave@example.com");
+		assertTrue(resolver.resolve(service, Arrays.asList(dave)).isEmpty());
+
+		server.respond("POST /api/v4/users/usernames", 200,
+				new JSONArray().put(user("dave", "dave@example.com")).toString());
+		assertEquals("dave", resolver.resolve(service, Arrays.asList(dave)).get(dave));
+		assertEquals(2, server.getRequests().size());
+	}
+
+	private static JSONObject user(String username, String email) {
+		return new JSONObject().put("id", username + "-id").put("username", username).put("email", email);
+	}
+}
@@ -0,0 +1,100 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.AbstractBuild;
+import hudson.scm.ChangeLogSet;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering cost of the freestyle notification, for synthetic builds with change sets of increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@SuppressWarnings("rawtypes")
+public class MessageRenderingBenchmark {
+
+	@Param({"SMALL", "MEDIUM", "HUGE"})
+	public SyntheticBuilds.Size size;
+
+	private MattermostNotifier notifier;
+	private ActiveNotifier activeNotifier;
+	private AbstractBuild build;
+	private JSONObject payload;
+	private String escapeInput;
+
+	@Setup
+	public void setUp() throws Exception {
+		notifier = SyntheticBuilds.notifier();
+		activeNotifier = new ActiveNotifier(notifier, SyntheticBuilds.listener());
+		build = SyntheticBuilds.build(size, 1);
+		payload = completedMessage().getMattermostJSON();
+		StringBuilder input = new StringBuilder();
+		for (Object entry : build.getChangeSet().getItems()) {
+			input.append(((ChangeLogSet.Entry) entry).getMsg()).append('\n');
+		}
+		escapeInput = input.toString();
+	}
+
+	private ActiveNotifier.MessageBuilder newBuilder() {
+		return activeNotifier.new MessageBuilder(notifier, build);
+	}
+
+	private ActiveNotifier.MessageBuilder completedMessage() {
+		return newBuilder()
+				.appendProjectAsAuthor()
+				.appendCommitsAsText()
+				.appendStatus()
+				.appendDuration()
+				.appendChanges()
+				.appendTestSummary();
+	}
+
+	@Benchmark
+	public JSONObject renderStartedMessage() {
+		return newBuilder()
+				.appendProjectAsAuthor()
+				.appendCommitsAsText()
+				.appendChanges()
+				.getMattermostJSON();
+	}
+
+	@Benchmark
+	public JSONObject renderCompletedMessage() {
+		return completedMessage().getMattermostJSON();
+	}
+
+	@Benchmark
+	public JSONObject summarizeCommitList() {
+		return newBuilder().appendCommitsAsText().getMattermostJSON();
+	}
+
+	@Benchmark
+	public JSONObject summarizeChanges() {
+		return newBuilder().appendChanges().getMattermostJSON();
+	}
+
+	@Benchmark
+	public String escape() {
+		return newBuilder().escape(escapeInput);
+	}
+
+	@Benchmark
+	public String serializePayload() {
+		return payload.toString();
+	}
+
+	@Benchmark
+	public String renderAndSerialize() {
+		return completedMessage().getMattermostJSON().toString();
+	}
+}
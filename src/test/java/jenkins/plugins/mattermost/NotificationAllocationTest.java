@@ -0,0 +1,102 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import org.apache.commons.httpclient.HttpStatus;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Guards against the notification path quietly starting to allocate megabytes: measures the bytes allocated by
+ * the current thread for one {@link ActiveNotifier#completed} cycle, including rendering and
+ * {@link StandardMattermostService#publish} against the stub client, and compares them with a budget per change
+ * set size. Budgets leave roughly 3x headroom and can be overridden with {@code -Dallocation.budget.<SIZE>=<bytes>}.
+ */
+@SuppressWarnings("rawtypes")
+public class NotificationAllocationTest {
+
+	private static final int WARMUP = 50;
+	private static final int MEASURED = 10;
+
+	@Test
+	public void noChanges() throws Exception {
+		assertWithinBudget(SyntheticBuilds.Size.NONE, 256 * 1024);
+	}
+
+	@Test
+	public void hundredCommits() throws Exception {
+		assertWithinBudget(SyntheticBuilds.Size.LARGE, 2 * 1024 * 1024);
+	}
+
+	@Test
+	public void tenThousandAffectedFiles() throws Exception {
+		assertWithinBudget(SyntheticBuilds.Size.HUGE, 12 * 1024 * 1024);
+	}
+
+	private void assertWithinBudget(SyntheticBuilds.Size size, long defaultBudget) throws Exception {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long budget = Long.getLong("allocation.budget." + size.name(), defaultBudget);
+
+		// every cycle needs its own build, otherwise the dedup store skips the post
+		AbstractBuild[] builds = new AbstractBuild[WARMUP + MEASURED];
+		for (int i = 0; i < builds.length; i++) {
+			builds[i] = SyntheticBuilds.build(size, i + 1);
+		}
+		HttpClientStub httpClient = new HttpClientStub();
+		httpClient.setHttpStatus(HttpStatus.SC_OK);
+		// a store per scenario, the builds of all scenarios share their job names and numbers
+		DeliveryDedupStore dedupStore = new DeliveryDedupStore(builds.length, 60000);
+		ActiveNotifier activeNotifier = new ActiveNotifier(new StubbedNotifier(httpClient, dedupStore),
+				SyntheticBuilds.listener());
+
+		long threadId = Thread.currentThread().getId();
+		long minimum = Long.MAX_VALUE;
+		for (int i = 0; i < builds.length; i++) {
+			long before = threads.getThreadAllocatedBytes(threadId);
+			activeNotifier.completed(builds[i]);
+			long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+			if (i >= WARMUP) {
+				// the minimum filters out one-off allocations such as class loading and lazily created statics
+				minimum = Math.min(minimum, allocated);
+			}
+		}
+		assertEquals("every cycle should have posted", builds.length, httpClient.getNumberOfCallsToExecuteMethod());
+		assertTrue(String.format("%s notification allocated %,d bytes, budget is %,d", size, minimum, budget), minimum <= budget);
+	}
+
+	/**
+	 * Posts through {@link StandardMattermostServiceStub} and needs no running Jenkins.
+	 */
+	private static class StubbedNotifier extends MattermostNotifier {
+
+		private final HttpClientStub httpClient;
+		private final DeliveryDedupStore dedupStore;
+
+		StubbedNotifier(HttpClientStub httpClient, DeliveryDedupStore dedupStore) {
+			super("http://mattermost.example.com/hooks/token", "#builds", "", "http://jenkins.example.com/",
+					"", true, true, true, true, true, true, true, true, true, CommitInfoChoice.AUTHORS_AND_TITLES, false, "");
+			this.httpClient = httpClient;
+			this.dedupStore = dedupStore;
+		}
+
+		@Override
+		public MattermostService newMattermostService(AbstractBuild r, BuildListener listener) {
+			StandardMattermostServiceStub service = new StandardMattermostServiceStub(getEndpoint(), getRoom(), getIcon());
+			service.setHttpClient(httpClient);
+			service.setDedupStore(dedupStore);
+			return service;
+		}
+
+		@Override
+		public DescriptorImpl getDescriptor() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class NotificationLoggerTest {
+
+	private final Logger logger = Logger.getLogger(NotificationLoggerTest.class.getName());
+	private final List<LogRecord> records = new ArrayList<>();
+	private final Handler handler = new Handler() {
+		@Override
+		public void publish(LogRecord record) {
+			records.add(record);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@Before
+	public void setUp() {
+		logger.setUseParentHandlers(false);
+		logger.addHandler(handler);
+		logger.setLevel(Level.INFO);
+	}
+
+	@After
+	public void tearDown() {
+		logger.removeHandler(handler);
+	}
+
+	@Test
+	public void repeatedWarningsAreSampled() {
+		NotificationLogger log = new NotificationLogger(logger, 1000);
+		for (int i = 0; i < 10; i++) {
+			log.sampled(Level.WARNING, "queue-full", "queue is full", null, i);
+		}
+		log.sampled(Level.WARNING, "queue-full", "queue is full", null, 1000);
+		assertEquals(2, records.size());
+		assertEquals("queue is full", records.get(0).getMessage());
+		assertEquals("queue is full (9 similar messages suppressed)", records.get(1).getMessage());
+	}
+
+	@Test
+	public void payloadIsNotRenderedBelowFinest() {
+		NotificationLogger log = new NotificationLogger(logger, 1000);
+		Object payload = new Object() {
+			@Override
+			public String toString() {
+				throw new AssertionError("payload should not be rendered");
+			}
+		};
+		log.payload("town-square", payload);
+		log.posted("town-square", 200, 1000000, 42);
+		assertTrue(records.isEmpty());
+	}
+
+	@Test
+	public void longMessagesAreTruncated() {
+		assertEquals("abc", NotificationLogger.truncate("abc", 3));
+		assertEquals("ab... (1 more chars)", NotificationLogger.truncate("abc", 2));
+	}
+}
@@ -0,0 +1,48 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+
+public class NotificationTimingTest {
+
+	@Test
+	public void nestedPhasesAreSubtractedFromEnclosingOne() throws Exception {
+		NotificationTiming timing = NotificationTiming.start();
+		NotificationTiming.begin();
+		Thread.sleep(5);
+		NotificationTiming.begin();
+		Thread.sleep(20);
+		NotificationTiming.end("changes");
+		NotificationTiming.end("render");
+
+		long render = timing.getPhases().get("render");
+		long changes = timing.getPhases().get("changes");
+		assertTrue("changes took " + changes, changes >= 20000000L);
+		assertTrue("render should exclude changes, took " + render, render < changes);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		timing.finish("timing-test", "completion", new PrintStream(out, true));
+		String line = out.toString();
+		assertTrue(line, line.startsWith("Mattermost completion notification took "));
+		assertTrue(line, line.contains("render ") && line.contains("changes ") && line.contains("other "));
+
+		boolean aggregated = false;
+		for (NotificationTiming.JobTimings job : NotificationTiming.getJobs()) {
+			if (job.getName().equals("timing-test")) {
+				aggregated = true;
+				assertEquals(1, job.getPhases().get("total").getCount());
+			}
+		}
+		assertTrue(aggregated);
+	}
+
+	@Test
+	public void phasesAreIgnoredWithoutTiming() {
+		NotificationTiming.begin();
+		NotificationTiming.end("http");
+	}
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NotificationTraceTest {
+
+	@Test
+	public void traceFollowsDeliveryToDispatcherThread() throws Exception {
+		NotificationDispatcher dispatcher = new NotificationDispatcher(1, 10);
+		final CountDownLatch delivered = new CountDownLatch(1);
+		final String[] prefix = new String[1];
+
+		NotificationTrace trace = NotificationTrace.start("test", "job #1 completed");
+		NotificationTrace.mark("rendered", null);
+		assertTrue(dispatcher.submit(new Runnable() {
+			@Override
+			public void run() {
+				prefix[0] = NotificationTrace.logPrefix();
+				NotificationTrace.mark("http", "town-square 200");
+				delivered.countDown();
+			}
+		}));
+		trace.close();
+		assertNull(NotificationTrace.current());
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		assertEquals("[trace " + trace.getId() + "] ", prefix[0]);
+
+		JSONObject json = awaitCompleted(trace.getId());
+		assertEquals("job #1 completed", json.getString("subject"));
+		JSONArray events = json.getJSONArray("events");
+		assertEquals("rendered", events.getJSONObject(0).getString("name"));
+		assertEquals("queued", events.getJSONObject(1).getString("name"));
+		assertEquals("dequeued", events.getJSONObject(2).getString("name"));
+		assertEquals("http", events.getJSONObject(3).getString("name"));
+	}
+
+	@Test
+	public void marksWithoutTraceAreIgnored() {
+		NotificationTrace.mark("http", null);
+		assertEquals("", NotificationTrace.logPrefix());
+	}
+
+	private static JSONObject awaitCompleted(String id) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < deadline) {
+			JSONArray traces = NotificationTrace.getCompletedAsJSON();
+			for (int i = 0; i < traces.length(); i++) {
+				if (traces.getJSONObject(i).getString("id").equals(id)) {
+					return traces.getJSONObject(i);
+				}
+			}
+			Thread.sleep(10);
+		}
+		fail("trace " + id + " was not completed");
+		return null;
+	}
+}
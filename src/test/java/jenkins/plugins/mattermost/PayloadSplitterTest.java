@@ -0,0 +1,164 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PayloadSplitterTest {
+
+	private static final int LIMIT = 20000;
+
+	@Test
+	public void smallPayloadIsNotSplit() {
+		JSONObject json = message(commits(10), "Success");
+		List<JSONObject> parts = PayloadSplitter.split(json, LIMIT);
+		assertEquals(1, parts.size());
+		assertSame(json, parts.get(0));
+	}
+
+	@Test
+	public void encodedSizeMatchesFormEncodedJson() throws UnsupportedEncodingException {
+		String text = "- fix \"quotes\" & <tags> in \u00fcn\u00efc\u00f6d\u00e9 \u20ac\n\tand control \u0001\u0085 chars \ud83d\ude00";
+		String quoted = JSONObject.quote(text);
+		assertEquals(URLEncoder.encode(quoted, "UTF-8").length(), PayloadSplitter.encodedSize(text) + 6);
+	}
+
+	@Test
+	public void longCommitListIsSplitAtLineBreaks() throws UnsupportedEncodingException {
+		String commits = commits(2000);
+		List<JSONObject> parts = PayloadSplitter.split(message(commits, "Success"), LIMIT);
+		assertTrue(parts.size() > 1);
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < parts.size(); i++) {
+			assertTrue("part " + i + " too large", sentSize(parts.get(i)) <= LIMIT);
+			String part = attachment(parts.get(i)).getString("text");
+			if (i < parts.size() - 1) {
+				assertTrue(part.endsWith("\n"));
+			}
+			text.append(part);
+		}
+		assertEquals(commits, text.toString());
+		// the first post keeps the fields, continuations carry the color
+		assertEquals("Success", attachment(parts.get(0)).getJSONArray("fields").getJSONObject(0).getString("value"));
+		assertEquals("good", attachment(parts.get(1)).getString("color"));
+		assertEquals("(continued 2/" + parts.size() + ")", attachment(parts.get(1)).getString("pretext"));
+	}
+
+	@Test
+	public void lineLongerThanAPostIsBroken() throws UnsupportedEncodingException {
+		String line = SyntheticLine.of(3 * LIMIT);
+		List<JSONObject> parts = PayloadSplitter.split(message(line, "Success"), LIMIT);
+		StringBuilder text = new StringBuilder();
+		for (JSONObject part : parts) {
+			assertTrue(sentSize(part) <= LIMIT);
+			text.append(attachment(part).optString("text"));
+		}
+		assertEquals(line, text.toString());
+	}
+
+	@Test
+	public void oversizedFieldIsTruncated() throws UnsupportedEncodingException {
+		List<JSONObject> parts = PayloadSplitter.split(message("- one commit", SyntheticLine.of(2 * LIMIT)), LIMIT);
+		assertEquals(1, parts.size());
+		assertTrue(sentSize(parts.get(0)) <= LIMIT);
+		String value = attachment(parts.get(0)).getJSONArray("fields").getJSONObject(0).getString("value");
+		assertTrue(value.endsWith(PayloadSplitter.TRUNCATED));
+		assertEquals("- one commit", attachment(parts.get(0)).getString("text"));
+	}
+
+	@Test
+	public void plainTextIsSplitIntoPlainPosts() throws UnsupportedEncodingException {
+		String text = commits(2000);
+		List<JSONObject> parts = PayloadSplitter.split(new JSONObject().put("text", text), LIMIT);
+		assertTrue(parts.size() > 1);
+		StringBuilder joined = new StringBuilder();
+		for (JSONObject part : parts) {
+			assertTrue(sentSize(part) <= LIMIT);
+			assertFalse(part.has("attachments"));
+			joined.append(part.getString("text"));
+		}
+		assertEquals(text, joined.toString());
+	}
+
+	@Test
+	public void plainTextIsSplitBelowTheRestMessageLimit() throws UnsupportedEncodingException {
+		// small enough for a webhook, too long for the message of a post through the REST API
+		String text = commits(1000) + "\ud83d\ude00 done";
+		assertTrue(PayloadSplitter.encodedSize(text) < PayloadSplitter.MAX_PAYLOAD_BYTES);
+		List<JSONObject> parts = PayloadSplitter.split(new JSONObject().put("text", text), PayloadSplitter.MAX_PAYLOAD_BYTES);
+		assertTrue(parts.size() > 1);
+		StringBuilder joined = new StringBuilder();
+		for (JSONObject part : parts) {
+			String message = part.getString("text");
+			assertTrue(message.codePointCount(0, message.length()) <= PayloadSplitter.MAX_MESSAGE_RUNES);
+			joined.append(message);
+		}
+		assertEquals(text, joined.toString());
+	}
+
+	@Test
+	public void longMessageNextToAttachmentsIsTruncated() {
+		JSONObject json = message(commits(10), "Success").put("text", commits(500));
+		List<JSONObject> parts = PayloadSplitter.split(json, LIMIT, 1000);
+		assertEquals(1, parts.size());
+		String message = parts.get(0).getString("text");
+		assertTrue(message.length() <= 1000);
+		assertTrue(message.endsWith(PayloadSplitter.TRUNCATED));
+		assertEquals(commits(10), attachment(parts.get(0)).getString("text"));
+	}
+
+	private static JSONObject message(String text, String status) {
+		JSONObject field = new JSONObject();
+		field.put("short", true);
+		field.put("title", "Status");
+		field.put("value", status);
+		JSONObject attachment = new JSONObject();
+		attachment.put("author_name", "job #1");
+		attachment.put("color", "good");
+		attachment.put("text", text);
+		attachment.put("fields", new JSONArray().put(field));
+		return new JSONObject().put("attachments", new JSONArray().put(attachment));
+	}
+
+	private static JSONObject attachment(JSONObject json) {
+		return json.getJSONArray("attachments").getJSONObject(0);
+	}
+
+	private static String commits(int count) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			text.append("- Fix \"issue\" #").append(i).append(" in src/main/\u00dcnit").append(i).append(".java [dev").append(i % 7)
+					.append("]\n");
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Size of the payload as posted to a webhook, including what the service adds when sending.
+	 */
+	private static int sentSize(JSONObject part) throws UnsupportedEncodingException {
+		JSONObject sent = new JSONObject(part.toString());
+		sent.put("channel", "some-rather-long-channel-name");
+		sent.put("username", "jenkins");
+		sent.put("icon_url", "https://jenkins.example.com/static/images/jenkins.png");
+		return ("payload=" + URLEncoder.encode(sent.toString(), "UTF-8")).length();
+	}
+
+	private static final class SyntheticLine {
+
+		static String of(int length) {
+			StringBuilder line = new StringBuilder(length);
+			for (int i = 0; i < length; i++) {
+				line.append(i % 10 == 0 ? '/' : (char) ('a' + i % 26));
+			}
+			return line.toString();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+
+import static org.junit.Assert.*;
+
+public class PooledMattermostServiceTest {
+
+	private MattermostStubServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MattermostStubServer().start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void postsPayloadAsForm() throws IOException {
+		PooledMattermostService service = new PooledMattermostService(server.getUrl() + "/hooks/pooled", "#room1,#room2", "");
+
+		assertTrue(service.publish("Build #1 succeeded", "good"));
+
+		assertEquals(2, server.getRequests().size());
+		String body = server.getRequests().get(0).getBodyAsString();
+		assertTrue(body.startsWith("payload="));
+		JSONObject json = new JSONObject(URLDecoder.decode(body.substring("payload=".length()), "UTF-8"));
+		assertEquals("#room1", json.getString("channel"));
+	}
+
+	@Test
+	public void postsLargePayloadCompressed() {
+		PooledMattermostService service = new PooledMattermostService(server.getUrl() + "/hooks/pooled", "#room1", "");
+		service.setCompressionThreshold(1024);
+
+		assertTrue(service.publish(GzipEncoderTest.largeText(20000), "danger"));
+
+		assertEquals("gzip", server.getRequests().get(0).contentEncoding);
+	}
+
+	@Test
+	public void failedPostReturnsFalse() {
+		server.setDefaultStatus(400);
+		PooledMattermostService service = new PooledMattermostService(server.getUrl() + "/hooks/pooled", "#room1", "");
+
+		assertFalse(service.publish("Build #1 failed", "danger"));
+	}
+
+	@Test
+	public void transportChoiceCreatesMatchingService() {
+		assertTrue(TransportChoice.HTTPCLIENT_4.newService("http://mm/hooks/x", "", "") instanceof PooledMattermostService);
+		assertFalse(TransportChoice.COMMONS_HTTPCLIENT.newService("http://mm/hooks/x", "", "") instanceof PooledMattermostService);
+		assertEquals(TransportChoice.HTTPCLIENT_4, TransportChoice.forDisplayName(TransportChoice.HTTPCLIENT_4.getDisplayName()));
+	}
+}
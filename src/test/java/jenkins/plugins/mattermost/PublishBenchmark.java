@@ -0,0 +1,64 @@
+package jenkins.plugins.mattermost;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of {@link StandardMattermostService#publish(String, String)} against a local server imitating an
+ * incoming webhook: serialization, connection handling and response reading included.
+ * <p>
+ * Runs from many threads; sample time mode reports the p50/p99/p999 latency next to the throughput. Both
+ * transports are compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+public class PublishBenchmark {
+
+	@Param({"#room1", "#room1,#room2,#room3,#room4,#room5"})
+	public String rooms;
+
+	/** simulated server processing time */
+	@Param({"0", "20"})
+	public long latencyMillis;
+
+	@Param({"200", "500"})
+	public int status;
+
+	@Param({"COMMONS_HTTPCLIENT", "HTTPCLIENT_4"})
+	public TransportChoice transport;
+
+	private MattermostStubServer server;
+	private StandardMattermostService service;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = new MattermostStubServer();
+		server.setRecordRequests(false);
+		server.setLatencyMillis(latencyMillis);
+		server.setDefaultStatus(status);
+		server.start();
+		service = transport.newService(server.getUrl() + "/hooks/benchmark", rooms, "");
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Benchmark
+	public boolean publish() {
+		return service.publish("Build #42 of folder/job finished: :white_check_mark: Success after 1 min 3 sec", "good");
+	}
+}
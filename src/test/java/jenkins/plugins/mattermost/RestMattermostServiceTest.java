@@ -0,0 +1,113 @@
+package jenkins.plugins.mattermost;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RestMattermostServiceTest {
+
+	private static final String CHANNEL_ID = "4xp9fdt77pncbef59f4k1qe83o";
+
+	private MattermostStubServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new MattermostStubServer().start();
+		server.respond("GET /api/v4/teams/name/team/channels/name/builds", 200, "{\"id\":\"" + CHANNEL_ID + "\"}");
+		server.respond("POST /api/v4/posts", 201, "{\"id\":\"post1\"}");
+		server.respond("PUT /api/v4/posts/post1/patch", 200, "{\"id\":\"post1\"}");
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void apiUrlIsDerivedFromWebhookUrl() {
+		assertEquals("https://chat.example.com/api/v4", RestMattermostService.getApiUrl("https://chat.example.com/hooks/abc123"));
+		assertEquals("https://chat.example.com/mm/api/v4", RestMattermostService.getApiUrl("https://chat.example.com/mm/"));
+	}
+
+	@Test
+	public void startPostIsPatchedOnCompletion() throws Exception {
+		RestMattermostService service = new RestMattermostService(server.getUrl() + "/hooks/abc", "team/builds", "", "token");
+		service.setDedupStore(new DeliveryDedupStore(16, 60000));
+		service.setChannelIdCache(new TtlCache<String, String>(16, 60000));
+
+		Map<String, String> postIds = service.publishForUpdate(message("Starting..."), "good",
+				IdempotencyKey.of("job", 1, IdempotencyKey.STARTED));
+		assertEquals("post1", postIds.get("team/builds"));
+
+		MattermostPostAction action = new MattermostPostAction(postIds);
+		assertTrue(service.publishOrUpdate(action.getPostIds(), message("Success"), "good",
+				IdempotencyKey.of("job", 1, IdempotencyKey.COMPLETED)));
+
+		List<MattermostStubServer.Request> requests = server.getRequests();
+		assertEquals(3, requests.size());
+		assertEquals("POST", requests.get(1).method);
+		assertEquals(CHANNEL_ID, new JSONObject(requests.get(1).getBodyAsString()).getString("channel_id"));
+		MattermostStubServer.Request patch = requests.get(2);
+		assertEquals("PUT", patch.method);
+		assertEquals("/api/v4/posts/post1/patch", patch.path);
+		assertEquals("Bearer token", patch.authorization);
+		assertEquals("Success", new JSONObject(patch.getBodyAsString()).getJSONObject("props")
+				.getJSONArray("attachments").getJSONObject(0).getString("text"));
+	}
+
+	@Test
+	public void channelIdIsUsedWithoutLookup() throws Exception {
+		RestMattermostService service = new RestMattermostService(server.getUrl(), CHANNEL_ID, "", "token");
+		assertTrue(service.publish(message("hello"), "good", null));
+		assertEquals(1, server.getRequests().size());
+		assertEquals("/api/v4/posts", server.getRequests().get(0).path);
+	}
+
+	@Test
+	public void channelNameIsResolvedOnce() throws Exception {
+		RestMattermostService service = new RestMattermostService(server.getUrl(), "team/builds", "", "token");
+		service.setChannelIdCache(new TtlCache<String, String>(16, 60000));
+		assertTrue(service.publish(message("first"), "good", null));
+		assertTrue(service.publish(message("second"), "good", null));
+
+		List<MattermostStubServer.Request> requests = server.getRequests();
+		assertEquals(3, requests.size());
+		assertEquals("GET", requests.get(0).method);
+		assertEquals("/api/v4/posts", requests.get(1).path);
+		assertEquals("/api/v4/posts", requests.get(2).path);
+	}
+
+	@Test
+	public void channelIsResolvedAgainAfterFailedPost() throws Exception {
+		RestMattermostService service = new RestMattermostService(server.getUrl(), "team/builds", "", "token");
+		service.setChannelIdCache(new TtlCache<String, String>(16, 60000));
+		assertTrue(service.publish(message("first"), "good", null));
+		server.respond("POST /api/v4/posts", 404, "{\"message\":\"channel not found\"}");
+		assertFalse(service.publish(message("second"), "good", null));
+		server.respond("POST /api/v4/posts", 201, "{\"id\":\"post2\"}");
+		assertTrue(service.publish(message("third"), "good", null));
+
+		List<MattermostStubServer.Request> requests = server.getRequests();
+		assertEquals(5, requests.size());
+		assertEquals("GET", requests.get(3).method);
+	}
+
+	@Test
+	public void failedPostReturnsFalse() {
+		server.respond("POST /api/v4/posts", 403, "{\"message\":\"forbidden\"}");
+		RestMattermostService service = new RestMattermostService(server.getUrl(), CHANNEL_ID, "", "token");
+		assertFalse(service.publish(message("hello"), "good", null));
+	}
+
+	private static JSONObject message(String text) {
+		JSONObject json = new JSONObject();
+		json.append("attachments", new JSONObject().put("text", text));
+		return json;
+	}
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ShardPoolTest {
+
+	@Test
+	public void singleMemberIsAlwaysSelected() {
+		ShardPool pool = ShardPool.parse("http://mm/hooks/a");
+		assertEquals(1, pool.size());
+		assertEquals("http://mm/hooks/a", pool.select("#builds"));
+		assertNull(ShardPool.parse(null).select("#builds"));
+	}
+
+	@Test
+	public void membersAreSplitOnPipes() {
+		ShardPool pool = ShardPool.parse("http://mm/hooks/a | http://mm/hooks/b|http://mm/hooks/c");
+		assertEquals(Arrays.asList("http://mm/hooks/a", "http://mm/hooks/b", "http://mm/hooks/c"), pool.getMembers());
+	}
+
+	@Test
+	public void channelsAreSpreadOverAllMembers() {
+		ShardPool pool = ShardPool.parse("a|b|c|d");
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 4000; i++) {
+			String member = pool.select("#channel-" + i);
+			assertEquals(member, pool.select("#channel-" + i));
+			Integer count = counts.get(member);
+			counts.put(member, count == null ? 1 : count + 1);
+		}
+		assertEquals(4, counts.size());
+		for (int count : counts.values()) {
+			assertTrue("unbalanced: " + counts, count > 500 && count < 1500);
+		}
+	}
+
+	@Test
+	public void addingAMemberOnlyMovesItsOwnChannels() {
+		ShardPool before = ShardPool.parse("a|b|c");
+		ShardPool after = ShardPool.parse("a|b|c|d");
+		for (int i = 0; i < 1000; i++) {
+			String channel = "#channel-" + i;
+			String member = after.select(channel);
+			if (!member.equals("d")) {
+				assertEquals(before.select(channel), member);
+			}
+		}
+	}
+
+	@Test
+	public void targetsOfAPooledEndpointPostThroughTheirChannelsWebhook() {
+		String endpoint = "http://mm/hooks/a|http://mm/hooks/b";
+		DeliveryTarget target = DeliveryTarget.parse(endpoint, "#builds", "").get(0);
+		assertEquals(ShardPool.parse(endpoint).select("#builds"), target.getUrl());
+		assertEquals(endpoint, target.getEndpoint());
+		assertEquals("#builds@http://mm", target.toString());
+	}
+}
@@ -2,9 +2,13 @@ package jenkins.plugins.mattermost;
 
 import hudson.ProxyConfiguration;
 import org.apache.http.HttpStatus;
+import org.json.JSONObject;
 import org.junit.Test;
 
+import java.net.ConnectException;
+import java.net.SocketException;
 import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
@@ -94,6 +98,98 @@ public class StandardMattermostServiceTest {
 		assertTrue(service.publish("message"));
 	}
 
+	@Test
+	public void publishWithSameEventKeyPostsOnlyOnce() {
+		StandardMattermostServiceStub service = new StandardMattermostServiceStub("domain", "#room1,#room2", "");
+		service.setDedupStore(new DeliveryDedupStore(16, 60000));
+		HttpClientStub httpClientStub = new HttpClientStub();
+		httpClientStub.setHttpStatus(HttpStatus.SC_OK);
+		service.setHttpClient(httpClientStub);
+		String eventKey = IdempotencyKey.of("job", 1, IdempotencyKey.COMPLETED);
+		service.publish(new JSONObject(), "good", eventKey);
+		service.publish(new JSONObject(), "good", eventKey);
+		assertEquals(2, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+	}
+
+	@Test
+	public void failedPublishWithEventKeyCanBeRetried() {
+		StandardMattermostServiceStub service = new StandardMattermostServiceStub("domain", "#room1", "");
+		service.setDedupStore(new DeliveryDedupStore(16, 60000));
+		HttpClientStub httpClientStub = new HttpClientStub();
+		httpClientStub.setHttpStatus(HttpStatus.SC_NOT_FOUND);
+		service.setHttpClient(httpClientStub);
+		String eventKey = IdempotencyKey.of("job", 1, IdempotencyKey.COMPLETED);
+		assertFalse(service.publish(new JSONObject(), "good", eventKey));
+		httpClientStub.setHttpStatus(HttpStatus.SC_OK);
+		assertTrue(service.publish(new JSONObject(), "good", eventKey));
+		assertEquals(2, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+	}
+
+	@Test
+	public void unavailableEndpointFailsOverToTheNextOne() {
+		StandardMattermostServiceStub service = new StandardMattermostServiceStub("http://ingress-a.failover/hooks/x http://ingress-b.failover/hooks/x", "#room1", "");
+		HttpClientStub httpClientStub = new HttpClientStub();
+		httpClientStub.setHttpStatus(HttpStatus.SC_SERVICE_UNAVAILABLE);
+		service.setHttpClient(httpClientStub);
+		assertFalse(service.publish("message"));
+		assertEquals(2, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+		assertFalse(EndpointHealth.get().isReachable("http://ingress-b.failover/hooks/x"));
+	}
+
+	@Test
+	public void refusedPostIsNotSentToOtherEndpoints() {
+		StandardMattermostServiceStub service = new StandardMattermostServiceStub("http://ingress-a.refused/hooks/x http://ingress-b.refused/hooks/x", "#room1", "");
+		HttpClientStub httpClientStub = new HttpClientStub();
+		httpClientStub.setHttpStatus(HttpStatus.SC_NOT_FOUND);
+		service.setHttpClient(httpClientStub);
+		assertFalse(service.publish("message"));
+		assertEquals(1, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+	}
+
+	@Test
+	public void gatewayTimeoutIsNotSentToOtherEndpoints() {
+		StandardMattermostServiceStub service = new StandardMattermostServiceStub("http://ingress-a.timeout/hooks/x http://ingress-b.timeout/hooks/x", "#room1", "");
+		service.setDedupStore(new DeliveryDedupStore(16, 60000));
+		HttpClientStub httpClientStub = new HttpClientStub();
+		httpClientStub.setHttpStatus(HttpStatus.SC_GATEWAY_TIMEOUT);
+		service.setHttpClient(httpClientStub);
+		String eventKey = IdempotencyKey.of("job", 1, IdempotencyKey.COMPLETED);
+		assertFalse(service.publish(new JSONObject(), "good", eventKey));
+		assertEquals(1, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+		// the post may have landed, it is not repeated either
+		httpClientStub.setHttpStatus(HttpStatus.SC_OK);
+		service.publish(new JSONObject(), "good", eventKey);
+		assertEquals(1, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+	}
+
+	@Test
+	public void refusedConnectionFailsOverToTheNextOne() {
+		StandardMattermostServiceStub service = new StandardMattermostServiceStub("http://ingress-a.refusing/hooks/x http://ingress-b.refusing/hooks/x", "#room1", "");
+		HttpClientStub httpClientStub = new HttpClientStub();
+		httpClientStub.setFailure(new ConnectException("Connection refused"));
+		service.setHttpClient(httpClientStub);
+		assertFalse(service.publish("message"));
+		assertEquals(2, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+	}
+
+	@Test
+	public void resetConnectionIsNotSentToOtherEndpoints() {
+		StandardMattermostServiceStub service = new StandardMattermostServiceStub("http://ingress-a.reset/hooks/x http://ingress-b.reset/hooks/x", "#room1", "");
+		HttpClientStub httpClientStub = new HttpClientStub();
+		httpClientStub.setFailure(new SocketException("Connection reset"));
+		service.setHttpClient(httpClientStub);
+		assertFalse(service.publish("message"));
+		assertEquals(1, service.getHttpClient().getNumberOfCallsToExecuteMethod());
+	}
+
+	@Test
+	public void proxyIsDecidedPerTarget() {
+		StandardMattermostService service = new StandardMattermostService("http://a.internal.com/hooks/x http://b.example.com/hooks/x", "roomid", "icon");
+		List<Pattern> noProxyHosts = ProxyConfiguration.getNoProxyHostPatterns("*.internal.com");
+		assertFalse(service.isProxyRequired("http://a.internal.com/hooks/x", noProxyHosts));
+		assertTrue(service.isProxyRequired("http://b.example.com/hooks/x", noProxyHosts));
+	}
+
 	@Test
 	public void isProxyRequiredEmtyNoProxyHostsReturnsTrue() {
 		StandardMattermostService service = new StandardMattermostService("http://mymattermost.endpoint.com","roomid","icon");
@@ -0,0 +1,181 @@
+package jenkins.plugins.mattermost;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Cause;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import hudson.scm.EditType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Builds with synthetic change sets for benchmarks and allocation tests. The mocks are stub-only, so they do not
+ * record invocations and can be called millions of times.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class SyntheticBuilds {
+
+	public enum Size {
+		/** no changes at all */
+		NONE(0, 0),
+		/** a typical push */
+		SMALL(1, 2),
+		MEDIUM(50, 5),
+		/** a big merge: 100 commits */
+		LARGE(100, 5),
+		/** 10k affected files */
+		HUGE(1000, 10);
+
+		final int commits;
+		final int filesPerCommit;
+
+		Size(int commits, int filesPerCommit) {
+			this.commits = commits;
+			this.filesPerCommit = filesPerCommit;
+		}
+	}
+
+	private SyntheticBuilds() {
+	}
+
+	public static MattermostNotifier notifier() {
+		return new MattermostNotifier("http://mattermost.example.com/hooks/token", "#builds", "", "http://jenkins.example.com/",
+				"", true, true, true, true, true, true, true, true, true, CommitInfoChoice.AUTHORS_AND_TITLES, false, "");
+	}
+
+	public static AbstractBuild build(Size size, int number) throws Exception {
+		AbstractProject project = stub(AbstractProject.class);
+		when(project.getFullDisplayName()).thenReturn("folder \u00bb synthetic-job");
+		when(project.getFullName()).thenReturn("folder/synthetic-job");
+		AbstractBuild build = build(project, changeSet(size), number);
+		when(project.getLastBuild()).thenReturn(build);
+		return build;
+	}
+
+	/**
+	 * A build of the given, possibly real, project. The change set can be shared between builds.
+	 */
+	public static AbstractBuild build(AbstractProject project, ChangeLogSet changeSet, int number) throws Exception {
+		AbstractBuild build = stub(AbstractBuild.class);
+		when(build.getProject()).thenReturn(project);
+		when(build.getNumber()).thenReturn(number);
+		when(build.getDisplayName()).thenReturn("#" + number);
+		when(build.getUrl()).thenReturn("job/folder/job/synthetic-job/" + number + "/");
+		when(build.getResult()).thenReturn(Result.SUCCESS);
+		when(build.isBuilding()).thenReturn(false);
+		when(build.getDurationString()).thenReturn("1 min 3 sec");
+		when(build.getCause(Cause.UpstreamCause.class)).thenReturn(null);
+		when(build.getEnvironment(any(TaskListener.class))).thenReturn(new EnvVars());
+		when(build.hasChangeSetComputed()).thenReturn(true);
+		when(build.getChangeSet()).thenReturn(changeSet);
+		return build;
+	}
+
+	public static ChangeLogSet changeSet(Size size) {
+		return new SyntheticChangeLogSet(size);
+	}
+
+	public static BuildListener listener() {
+		return stub(BuildListener.class);
+	}
+
+	private static <T> T stub(Class<T> type) {
+		return mock(type, withSettings().stubOnly());
+	}
+
+	static class SyntheticChangeLogSet extends ChangeLogSet<ChangeLogSet.Entry> {
+
+		private final List<Entry> entries;
+
+		SyntheticChangeLogSet(Size size) {
+			super(null, null);
+			List<User> authors = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				User author = stub(User.class);
+				when(author.getDisplayName()).thenReturn("Developer " + i);
+				when(author.getId()).thenReturn("developer" + i);
+				authors.add(author);
+			}
+			entries = new ArrayList<>(size.commits);
+			for (int i = 0; i < size.commits; i++) {
+				entries.add(new SyntheticEntry(i, authors.get(i % authors.size()), size.filesPerCommit));
+			}
+		}
+
+		@Override
+		public boolean isEmptySet() {
+			return entries.isEmpty();
+		}
+
+		@Override
+		public Iterator<Entry> iterator() {
+			return entries.iterator();
+		}
+	}
+
+	static class SyntheticEntry extends ChangeLogSet.Entry {
+
+		private final String msg;
+		private final User author;
+		private final List<ChangeLogSet.AffectedFile> files;
+
+		SyntheticEntry(int index, User author, int fileCount) {
+			this.msg = "JIRA-" + index + " Fix <flaky> handling of #" + index + " & friends in the notification path";
+			this.author = author;
+			this.files = new ArrayList<>(fileCount);
+			for (int i = 0; i < fileCount; i++) {
+				final String path = "src/main/java/org/example/module" + index + "/Component" + i + ".java";
+				final EditType editType = (i % 7 == 6) ? EditType.DELETE : EditType.EDIT;
+				files.add(new ChangeLogSet.AffectedFile() {
+					@Override
+					public String getPath() {
+						return path;
+					}
+
+					@Override
+					public EditType getEditType() {
+						return editType;
+					}
+				});
+			}
+		}
+
+		@Override
+		public String getMsg() {
+			return msg;
+		}
+
+		@Override
+		public User getAuthor() {
+			return author;
+		}
+
+		@Override
+		public Collection<String> getAffectedPaths() {
+			List<String> paths = new ArrayList<>(files.size());
+			for (ChangeLogSet.AffectedFile file : files) {
+				paths.add(file.getPath());
+			}
+			return Collections.unmodifiableList(paths);
+		}
+
+		@Override
+		public Collection<? extends ChangeLogSet.AffectedFile> getAffectedFiles() {
+			return files;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package jenkins.plugins.mattermost;
+
+import hudson.model.Run;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.*;
+
+public class ThreadReplyBatcherTest {
+
+	private ScheduledExecutorService timer;
+	private UpdatableMattermostService service;
+
+	@Before
+	public void setUp() {
+		timer = Executors.newSingleThreadScheduledExecutor();
+		service = mock(UpdatableMattermostService.class);
+		when(service.publishForUpdate(any(JSONObject.class), anyString(), (String) isNull()))
+				.thenReturn(Collections.singletonMap("#builds", "root1"));
+		when(service.publishReply(any(Map.class), any(JSONObject.class), anyString())).thenReturn(true);
+	}
+
+	@After
+	public void tearDown() {
+		timer.shutdownNow();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void messagesWithinIntervalAreMergedIntoOneReply() throws Exception {
+		JSONObject root = new JSONObject().put("text", "job #1");
+		ThreadReplyBatcher batcher = new ThreadReplyBatcher("job#1|#builds", null, "#builds", service, root, 500, timer);
+
+		batcher.add("stage one", "");
+		verify(service, timeout(2000)).publishReply(any(Map.class), any(JSONObject.class), anyString());
+		batcher.add("stage two", "");
+		batcher.add("stage three", "");
+
+		ArgumentCaptor<JSONObject> replies = ArgumentCaptor.forClass(JSONObject.class);
+		verify(service, timeout(2000).times(2)).publishReply(eq(Collections.singletonMap("#builds", "root1")),
+				replies.capture(), anyString());
+		List<JSONObject> sent = replies.getAllValues();
+		assertEquals("stage one", sent.get(0).getString("text"));
+		assertEquals("stage two\nstage three", sent.get(1).getString("text"));
+		verify(service, times(1)).publishForUpdate(eq(root), anyString(), (String) isNull());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void failedRootPostIsCreatedWithTheNextBatch() throws Exception {
+		when(service.publishForUpdate(any(JSONObject.class), anyString(), (String) isNull()))
+				.thenReturn(Collections.<String, String>emptyMap())
+				.thenReturn(Collections.singletonMap("#builds", "root1"));
+		JSONObject root = new JSONObject().put("text", "job #1");
+		ThreadReplyBatcher batcher = new ThreadReplyBatcher("job#1|#builds", null, "#builds", service, root, 200, timer);
+
+		batcher.add("stage one", "");
+		verify(service, timeout(2000)).publishReply(eq(Collections.<String, String>emptyMap()), any(JSONObject.class),
+				anyString());
+		batcher.add("stage two", "");
+		verify(service, timeout(2000)).publishReply(eq(Collections.singletonMap("#builds", "root1")),
+				any(JSONObject.class), anyString());
+		verify(service, times(2)).publishForUpdate(eq(root), anyString(), (String) isNull());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void messagesOfDifferentColorsAreSeparateReplies() throws Exception {
+		JSONObject root = new JSONObject().put("text", "job #1");
+		ThreadReplyBatcher batcher = new ThreadReplyBatcher("job#1|#builds", null, "#builds", service, root, 500, timer);
+
+		synchronized (batcher) {
+			// held until all messages are queued, so they end up in the first batch
+			batcher.add("compiled", "good");
+			batcher.add("tests failed", "danger");
+			batcher.add("retrying", "danger");
+		}
+
+		ArgumentCaptor<JSONObject> replies = ArgumentCaptor.forClass(JSONObject.class);
+		verify(service, timeout(2000).times(1)).publishReply(any(Map.class), replies.capture(), eq("good"));
+		verify(service, timeout(2000).times(1)).publishReply(any(Map.class), replies.capture(), eq("danger"));
+		JSONObject good = replies.getAllValues().get(0).getJSONArray("attachments").getJSONObject(0);
+		assertEquals("good", good.getString("color"));
+		assertEquals("compiled", good.getString("text"));
+		JSONObject danger = replies.getAllValues().get(1).getJSONArray("attachments").getJSONObject(0);
+		assertEquals("danger", danger.getString("color"));
+		assertEquals("tests failed\nretrying", danger.getString("text"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void postsOfOtherRoomsAreNotReplied() throws Exception {
+		Run run = mock(Run.class);
+		when(run.getActions(MattermostPostAction.class)).thenReturn(Collections.singletonList(
+				new MattermostPostAction("#other", Collections.singletonMap("#other", "otherRoot"))));
+		JSONObject root = new JSONObject().put("text", "job #1");
+		ThreadReplyBatcher batcher = new ThreadReplyBatcher("job#1|#builds", run, "#builds", service, root, 500, timer);
+
+		batcher.add("stage one", "");
+
+		verify(service, timeout(2000)).publishReply(eq(Collections.singletonMap("#builds", "root1")),
+				any(JSONObject.class), anyString());
+		verify(service, times(1)).publishForUpdate(eq(root), anyString(), (String) isNull());
+		verify(run).addAction(any(MattermostPostAction.class));
+	}
+}
@@ -0,0 +1,39 @@
+package jenkins.plugins.mattermost;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TtlCacheTest {
+
+	@Test
+	public void entriesExpireAfterTtl() {
+		TtlCache<String, String> cache = new TtlCache<>(16, 1000);
+		cache.put("team/builds", "id1", 0);
+		assertEquals("id1", cache.get("team/builds", 999));
+		assertNull(cache.get("team/builds", 1000));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsEvicted() {
+		TtlCache<String, String> cache = new TtlCache<>(2, 1000);
+		cache.put("a", "1", 0);
+		cache.put("b", "2", 0);
+		// reading a makes b the eldest
+		assertEquals("1", cache.get("a", 1));
+		cache.put("c", "3", 2);
+		assertEquals(2, cache.size());
+		assertEquals("1", cache.get("a", 3));
+		assertNull(cache.get("b", 3));
+		assertEquals("3", cache.get("c", 3));
+	}
+
+	@Test
+	public void invalidatedEntryIsGone() {
+		TtlCache<String, String> cache = new TtlCache<>(2, 1000);
+		cache.put("a", "1");
+		cache.invalidate("a");
+		assertNull(cache.get("a"));
+	}
+}
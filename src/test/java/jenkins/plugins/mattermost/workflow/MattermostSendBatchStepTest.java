@@ -0,0 +1,134 @@
+package jenkins.plugins.mattermost.workflow;
+
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import jenkins.plugins.mattermost.GlobalConfigSnapshot;
+import jenkins.plugins.mattermost.GlobalConfigSnapshotStub;
+import jenkins.plugins.mattermost.MattermostService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.*;
+import static org.powermock.api.mockito.PowerMockito.spy;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Jenkins.class, MattermostSendBatchStep.class})
+public class MattermostSendBatchStepTest {
+
+    @Mock
+    TaskListener taskListenerMock;
+    @Mock
+    PrintStream printStreamMock;
+    @Mock
+    MattermostService mattermostServiceMock;
+    @Mock
+    Jenkins jenkins;
+
+    private GlobalConfigSnapshot previousConfig;
+
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(Jenkins.class);
+        previousConfig = GlobalConfigSnapshotStub.publish("globalEndpoint", "globalChannel", "globalIcon");
+    }
+
+    @After
+    public void tearDown() {
+        GlobalConfigSnapshotStub.restore(previousConfig);
+    }
+
+    @Test
+    public void testMessagesFallBackToGlobalConfigAndReturnResults() throws Exception {
+        MattermostMessage first = new MattermostMessage("first");
+        MattermostMessage second = new MattermostMessage("second");
+        second.setChannel("#other");
+        second.setColor("danger");
+
+        MattermostSendBatchStep.MattermostSendBatchStepExecution stepExecution = spy(new MattermostSendBatchStep.MattermostSendBatchStepExecution());
+        stepExecution.step = new MattermostSendBatchStep(Arrays.asList(first, second));
+        stepExecution.listener = taskListenerMock;
+
+        when(Jenkins.getInstance()).thenReturn(jenkins);
+        when(taskListenerMock.getLogger()).thenReturn(printStreamMock);
+
+        when(stepExecution.getMattermostService(anyString(), anyString(), anyString())).thenReturn(mattermostServiceMock);
+        when(mattermostServiceMock.publish("first", "")).thenReturn(true);
+        when(mattermostServiceMock.publish("second", "danger")).thenReturn(false);
+
+        List<HashMap<String, Object>> results = stepExecution.run();
+
+        verify(stepExecution, times(1)).getMattermostService("globalEndpoint", "globalChannel", "globalIcon");
+        verify(stepExecution, times(1)).getMattermostService("globalEndpoint", "#other", "globalIcon");
+        assertEquals(2, results.size());
+        assertEquals("globalChannel", results.get(0).get("channel"));
+        assertEquals(true, results.get(0).get("success"));
+        assertEquals("#other", results.get(1).get("channel"));
+        assertEquals(false, results.get(1).get("success"));
+        verify(taskListenerMock, times(1)).error("1 Mattermost notifications failed. See Jenkins logs for details.");
+    }
+
+    @Test
+    public void testSendsRunConcurrentlyUpToParallelism() throws Exception {
+        List<MattermostMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            messages.add(new MattermostMessage("message " + i));
+        }
+        MattermostSendBatchStep step = new MattermostSendBatchStep(messages);
+        step.setParallelism(2);
+
+        MattermostSendBatchStep.MattermostSendBatchStepExecution stepExecution = spy(new MattermostSendBatchStep.MattermostSendBatchStepExecution());
+        stepExecution.step = step;
+        stepExecution.listener = taskListenerMock;
+
+        when(Jenkins.getInstance()).thenReturn(jenkins);
+        when(taskListenerMock.getLogger()).thenReturn(printStreamMock);
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        when(stepExecution.getMattermostService(anyString(), anyString(), anyString())).thenReturn(mattermostServiceMock);
+        when(mattermostServiceMock.publish(anyString(), anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                int now = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                threads.add(Thread.currentThread().getName());
+                Thread.sleep(100);
+                running.decrementAndGet();
+                return true;
+            }
+        });
+
+        List<HashMap<String, Object>> results = stepExecution.run();
+
+        assertEquals(6, results.size());
+        for (HashMap<String, Object> result : results) {
+            assertEquals(true, result.get("success"));
+        }
+        assertEquals(2, maxRunning.get());
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+        verify(taskListenerMock, never()).error(anyString());
+    }
+}
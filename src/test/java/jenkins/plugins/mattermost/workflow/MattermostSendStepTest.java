@@ -1,23 +1,31 @@
 package jenkins.plugins.mattermost.workflow;
 
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
-import jenkins.plugins.mattermost.MattermostNotifier;
+import jenkins.plugins.mattermost.GlobalConfigSnapshot;
+import jenkins.plugins.mattermost.GlobalConfigSnapshotStub;
 import jenkins.plugins.mattermost.MattermostService;
+import org.apache.commons.io.FileUtils;
 import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 import static org.powermock.api.mockito.PowerMockito.spy;
 
@@ -41,12 +49,22 @@ public class MattermostSendStepTest {
     @Mock
     Jenkins jenkins;
     @Mock
-    MattermostNotifier.DescriptorImpl mattermostDescMock;
+    Run runMock;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GlobalConfigSnapshot previousConfig;
 
     @Before
     public void setUp() {
         PowerMockito.mockStatic(Jenkins.class);
-        when(jenkins.getDescriptorByType(MattermostNotifier.DescriptorImpl.class)).thenReturn(mattermostDescMock);
+        previousConfig = GlobalConfigSnapshotStub.publish("globalEndpoint", "globalChannel", "globalIcon");
+    }
+
+    @After
+    public void tearDown() {
+        GlobalConfigSnapshotStub.restore(previousConfig);
     }
 
     @Test
@@ -63,9 +81,6 @@ public class MattermostSendStepTest {
 
         stepExecution.listener = taskListenerMock;
 
-        when(mattermostDescMock.getIcon()).thenReturn("differentIcon");
-
-
         when(taskListenerMock.getLogger()).thenReturn(printStreamMock);
         doNothing().when(printStreamMock).println();
 
@@ -88,9 +103,6 @@ public class MattermostSendStepTest {
 
         stepExecution.listener = taskListenerMock;
 
-        when(mattermostDescMock.getEndpoint()).thenReturn("globalEndpoint");
-        when(mattermostDescMock.getIcon()).thenReturn("globalIcon");
-        when(mattermostDescMock.getRoom()).thenReturn("globalChannel");
 
         when(taskListenerMock.getLogger()).thenReturn(printStreamMock);
         doNothing().when(printStreamMock).println();
@@ -128,6 +140,37 @@ public class MattermostSendStepTest {
         assertNull(stepExecution.step.getColor());
     }
 
+    @Test
+    public void testNoWaitQueuesMessage() throws Exception {
+
+        MattermostSendStep.SlackSendStepExecution stepExecution = spy(new MattermostSendStep.SlackSendStepExecution());
+        MattermostSendStep mattermostSendStep = new MattermostSendStep("message");
+        mattermostSendStep.setColor("good");
+        mattermostSendStep.setWait(false);
+        mattermostSendStep.setFailOnError(true);
+        stepExecution.step = mattermostSendStep;
+
+        when(Jenkins.getInstance()).thenReturn(jenkins);
+
+        stepExecution.listener = taskListenerMock;
+
+        when(taskListenerMock.getLogger()).thenReturn(printStreamMock);
+        doNothing().when(printStreamMock).println();
+
+        File buildLog = folder.newFile("log");
+        when(runMock.isBuilding()).thenReturn(true);
+        when(runMock.getLogFile()).thenReturn(buildLog);
+        doReturn(runMock).when(stepExecution).getRun();
+        when(stepExecution.getMattermostService(anyString(), anyString(), anyString())).thenReturn(mattermostServiceMock);
+        when(mattermostServiceMock.publish(anyString(), anyString())).thenReturn(false);
+
+        stepExecution.run();
+        verify(mattermostServiceMock, timeout(5000).times(1)).publish("message", "good");
+        //the step has returned, so the outcome goes to the log of the run instead of the step's listener
+        assertTrue(awaitLog(buildLog, "ERROR: Mattermost notification failed. See Jenkins logs for details."));
+        verify(taskListenerMock, never()).error(anyString());
+    }
+
     @Test
     public void testNullJenkinsInstance() throws Exception {
 
@@ -144,4 +187,15 @@ public class MattermostSendStepTest {
         stepExecution.run();
         verify(taskListenerMock, times(1)).error(anyString(), any(Exception.class));
     }
+
+    private static boolean awaitLog(File log, String line) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (FileUtils.readFileToString(log, "UTF-8").contains(line)) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
 }
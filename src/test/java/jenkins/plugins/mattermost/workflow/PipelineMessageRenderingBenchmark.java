@@ -0,0 +1,67 @@
+package jenkins.plugins.mattermost.workflow;
+
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.json.JSONObject;
+import org.junit.runner.Description;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering cost of the pipeline build status message.
+ * <p>
+ * {@link WorkflowRun} is final and cannot be stubbed, so this renders a real run of a throwaway Jenkins instance.
+ * That run has no change sets, synthetic change sets are covered by {@code MessageRenderingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PipelineMessageRenderingBenchmark {
+
+    private JenkinsRule jenkinsRule;
+    private WorkflowRun run;
+
+    @Setup
+    public void setUp() throws Throwable {
+        jenkinsRule = new JenkinsRule() {
+            {
+                testDescription = Description.createSuiteDescription(PipelineMessageRenderingBenchmark.class);
+            }
+        };
+        jenkinsRule.before();
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "benchmark");
+        job.setDefinition(new CpsFlowDefinition("", true));
+        run = jenkinsRule.assertBuildStatusSuccess(job.scheduleBuild2(0).get());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        jenkinsRule.after();
+    }
+
+    @Benchmark
+    public JSONObject renderBuildStatus() {
+        return new MattermostSendStep.MessageBuilder(run)
+                .appendProjectAsAuthor()
+                .appendCommitsAsText()
+                .appendStatus()
+                .appendDuration()
+                .appendChanges()
+                .getMattermostJSON();
+    }
+
+    @Benchmark
+    public String renderAndSerialize() {
+        return renderBuildStatus().toString();
+    }
+}